@@ -0,0 +1,11 @@
+package MyTeam.module.algorithm;
+
+// エージェントとクラスタの1対1割当を解くソルバの共通インタフェース
+// KMeansHungarianAllocator は module.cfg で指定されたクラスを使う
+public interface AssignmentSolver
+{
+    // n×m (n <= m) のコスト行列に対する最小コスト割当を返す
+    // ret[i] = i行目に割り当てられた列番号（割当不能なら -1）
+    // コストが Hungarian.FORBIDDEN の辺は使わない
+    int[] solve(int[][] costs);
+}
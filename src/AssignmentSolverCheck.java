@@ -0,0 +1,153 @@
+package MyTeam.module.algorithm;
+
+import java.util.*;
+
+import static MyTeam.module.algorithm.Hungarian.FORBIDDEN;
+
+// 割当禁止の辺（FORBIDDEN）を含む小さなコスト行列で，各ソルバの結果を
+// 全探索の最適解と比べる
+// 使い方：java MyTeam.module.algorithm.AssignmentSolverCheck [行列の数] [乱数の種]
+// 全探索の最適解は「割り当てる行の数が最大で，その中で総コストが最小」の割当とし，
+// Hungarian.execute，Hungarian.executeSparse，AuctionSolver（exact）の
+// 割り当てた行の数と総コストが一致しなければ例外を投げる
+// 全ての辺が禁止された行のある行列と，全ての行は割り当てられない行列も数えて表示する
+public final class AssignmentSolverCheck
+{
+    private static final int MAX_ROWS = 7;
+    private static final int MAX_EXTRA_COLUMNS = 3;
+
+    private AssignmentSolverCheck()
+    {
+    }
+
+    public static void main(String[] args)
+    {
+        int trials = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1;
+
+        Random random = new Random(seed);
+        AssignmentSolver auction = new AuctionSolver(true);
+        int emptyRows = 0;
+        int infeasible = 0;
+        for (int t=0; t<trials; ++t)
+        {
+            int[][] costs = randomCosts(random);
+            long[] best = bruteForce(costs);
+            if (hasEmptyRow(costs)) ++emptyRows;
+            if (best[0] < costs.length) ++infeasible;
+
+            check("Hungarian.execute", costs, Hungarian.execute(costs), best);
+            check("Hungarian.executeSparse", costs, sparse(costs), best);
+            check("AuctionSolver", costs, auction.solve(costs), best);
+        }
+        System.out.printf("OK trials=%d emptyRows=%d infeasible=%d%n",
+                          trials, emptyRows, infeasible);
+    }
+
+    // 禁止する辺の割合とコストの幅も行列ごとに変える
+    // （コストの幅が狭いと同じ総コストの割当が多くなる）
+    private static int[][] randomCosts(Random random)
+    {
+        int n = 1 + random.nextInt(MAX_ROWS);
+        int m = n + random.nextInt(MAX_EXTRA_COLUMNS + 1);
+        double forbidden = random.nextDouble() * 0.7;
+        int range = random.nextBoolean() ? 5 : 1000000;
+        int[][] ret = new int[n][m];
+        for (int i=0; i<n; ++i)
+            for (int j=0; j<m; ++j)
+                ret[i][j] = (random.nextDouble() < forbidden) ?
+                    FORBIDDEN : random.nextInt(range);
+        return ret;
+    }
+
+    private static boolean hasEmptyRow(int[][] costs)
+    {
+        for (int[] row : costs)
+        {
+            boolean empty = true;
+            for (int c : row) if (c != FORBIDDEN) empty = false;
+            if (empty) return true;
+        }
+        return false;
+    }
+
+    // 割り当てた行の数と総コストが最適解と一致するか確かめる
+    private static void check(String name, int[][] costs, int[] result, long[] best)
+    {
+        int m = costs[0].length;
+        boolean[] used = new boolean[m];
+        long count = 0;
+        long total = 0;
+        for (int i=0; i<costs.length; ++i)
+        {
+            int j = result[i];
+            if (j < 0) continue;
+            if (used[j] || costs[i][j] == FORBIDDEN)
+                throw new IllegalStateException(
+                    name + ": invalid assignment " + Arrays.toString(result)
+                    + " for " + Arrays.deepToString(costs));
+            used[j] = true;
+            ++count;
+            total += costs[i][j];
+        }
+        if (count != best[0] || total != best[1])
+            throw new IllegalStateException(
+                name + ": rows=" + count + " cost=" + total
+                + ", expected rows=" + best[0] + " cost=" + best[1]
+                + " for " + Arrays.deepToString(costs));
+    }
+
+    // 許可された辺を CSR 形式にして executeSparse で解く
+    private static int[] sparse(int[][] costs)
+    {
+        int n = costs.length;
+        int m = costs[0].length;
+        int[] rowStart = new int[n + 1];
+        int[] cols = new int[n * m];
+        int[] values = new int[n * m];
+        int e = 0;
+        for (int i=0; i<n; ++i)
+        {
+            for (int j=0; j<m; ++j)
+            {
+                if (costs[i][j] == FORBIDDEN) continue;
+                cols[e] = j;
+                values[e] = costs[i][j];
+                ++e;
+            }
+            rowStart[i + 1] = e;
+        }
+        return Hungarian.executeSparse(n, m, rowStart, cols, values);
+    }
+
+    // ret[0] = 割り当てる行の数の最大値，ret[1] = その中での総コストの最小値
+    private static long[] bruteForce(int[][] costs)
+    {
+        long[] ret = { -1, Long.MAX_VALUE };
+        search(costs, 0, new boolean[costs[0].length], 0, 0, ret);
+        return ret;
+    }
+
+    private static void search(
+        int[][] costs, int i, boolean[] used, long count, long total, long[] best)
+    {
+        if (i == costs.length)
+        {
+            if (count > best[0] || (count == best[0] && total < best[1]))
+            {
+                best[0] = count;
+                best[1] = total;
+            }
+            return;
+        }
+        // i行目を割り当てない場合
+        search(costs, i + 1, used, count, total, best);
+        for (int j=0; j<used.length; ++j)
+        {
+            if (used[j] || costs[i][j] == FORBIDDEN) continue;
+            used[j] = true;
+            search(costs, i + 1, used, count + 1, total + costs[i][j], best);
+            used[j] = false;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package MyTeam.module.algorithm;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static MyTeam.module.algorithm.Hungarian.FORBIDDEN;
+
+// Bertsekas のオークションアルゴリズム（ε-スケーリング付き）による割当
+// 未割当の行（入札者）の入札値の計算を fork-join で複数コアに分散する
+//
+// exact = true の場合は整数コストを (m+1) 倍してから最後に ε=1 まで下げるため，
+// 結果の総コストは Hungarian.execute と一致する
+// n < m の場合は全ての列に利得0で入札できる仮想行を足して正方問題にする
+// 許可された辺のない行も仮想行と同じく全ての列に入札させ，結果は -1 にする
+// （入札しない行があると入札者が列より少なくなり，前の段階の価格が残った列が
+//  選ばれなくなって総コストが最小にならない）
+// それ以外の行を全ては割り当てられない場合は fallback のソルバに任せる
+public class AuctionSolver implements AssignmentSolver
+{
+    // ε を 1 段階ごとに小さくする割合
+    private static final int EPSILON_FACTOR = 5;
+    // 入札者がこの数 × 列数 を超えたら並列に入札値を計算する
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+    // 1タスクあたりの入札者数の下限
+    private static final int CHUNK = 64;
+
+    private final boolean exact;
+    private final ForkJoinPool pool;
+    // 許可された辺では全ての行を割り当てられない場合に使うソルバ
+    private final AssignmentSolver fallback;
+
+    public AuctionSolver()
+    {
+        this(true);
+    }
+
+    public AuctionSolver(boolean exact)
+    {
+        this(exact, ForkJoinPool.commonPool());
+    }
+
+    public AuctionSolver(boolean exact, ForkJoinPool pool)
+    {
+        this(exact, pool, new HungarianSolver());
+    }
+
+    public AuctionSolver(boolean exact, ForkJoinPool pool, AssignmentSolver fallback)
+    {
+        this.exact = exact;
+        this.pool = pool;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public int[] solve(int[][] costs)
+    {
+        int n = costs.length;
+        int m = costs[0].length;
+        if (n > m)
+            throw new IllegalArgumentException(
+                "rows must be <= columns: " + n + "x" + m);
+
+        // 利得 = -コスト（exact の場合は (m+1) 倍）
+        long scale = this.exact ? m + 1 : 1;
+        long maxCost = 0;
+        for (int[] row : costs)
+            for (int c : row)
+                if (c != FORBIDDEN) maxCost = Math.max(maxCost, Math.abs((long)c));
+        long range = Math.max(1, 2 * maxCost * scale);
+
+        Problem p = new Problem(costs, n, m, scale);
+        long epsilon = Math.max(1, range / EPSILON_FACTOR);
+        for (;;)
+        {
+            if (!this.runPhase(p, epsilon, range))
+                // 許可された辺では全員を割り当てられない → fallback に任せる
+                return this.fallback.solve(costs);
+            if (epsilon == 1) break;
+            epsilon = Math.max(1, epsilon / EPSILON_FACTOR);
+        }
+
+        int[] ret = new int[n];
+        for (int i=0; i<n; ++i) ret[i] = (p.rows[i] == null) ? -1 : p.toRight[i];
+        return ret;
+    }
+
+    // 1段階分のオークション（割当は空から始め，価格は前の段階から引き継ぐ）
+    private boolean runPhase(Problem p, long epsilon, long range)
+    {
+        int m = p.m;
+        Arrays.fill(p.toRight, -1);
+        Arrays.fill(p.toLeft, -1);
+
+        // 1段階で価格が上がりうる量の上限（これを超えたら割当不能とみなす）
+        long limit = (long)(m + 1) * (range + epsilon) * 2;
+        long base = Long.MIN_VALUE;
+        for (long price : p.prices) base = Math.max(base, price);
+
+        int[] bidders = new int[m];
+        int count = m;
+        for (int i=0; i<m; ++i) bidders[i] = i;
+
+        while (count > 0)
+        {
+            // 入札値の計算（入札者ごとに独立なので並列化できる）
+            if ((long)count * m >= PARALLEL_THRESHOLD)
+                this.pool.invoke(new BidTask(p, bidders, 0, count, epsilon));
+            else
+                for (int k=0; k<count; ++k) p.bid(bidders[k], epsilon);
+
+            // 入札の解決（順序を固定するため逐次に行う）
+            // 同じ列への入札は最高値が勝ち，同値なら行番号の小さい方が勝つ
+            for (int k=0; k<count; ++k)
+            {
+                int i = bidders[k];
+                int j = p.bidColumn[i];
+                int w = p.winner[j];
+                if (w < 0 || p.bidValue[i] > p.bidValue[w]
+                    || (p.bidValue[i] == p.bidValue[w] && i < w))
+                    p.winner[j] = i;
+            }
+            int next = 0;
+            for (int k=0; k<count; ++k)
+            {
+                int i = bidders[k];
+                int j = p.bidColumn[i];
+                if (p.winner[j] != i)
+                {
+                    bidders[next++] = i;
+                    continue;
+                }
+                p.winner[j] = -1;
+                int old = p.toLeft[j];
+                if (old >= 0)
+                {
+                    p.toRight[old] = -1;
+                    bidders[next++] = old;
+                }
+                p.toLeft[j]  = i;
+                p.toRight[i] = j;
+                p.prices[j]  = p.bidValue[i];
+                if (p.prices[j] - base > limit) return false;
+            }
+            count = next;
+        }
+        return true;
+    }
+
+    // 入札値の計算を分割して並列に行うタスク
+    private static class BidTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Problem p;
+        private final int[] bidders;
+        private final int from;
+        private final int to;
+        private final long epsilon;
+
+        BidTask(Problem p, int[] bidders, int from, int to, long epsilon)
+        {
+            this.p = p;
+            this.bidders = bidders;
+            this.from = from;
+            this.to = to;
+            this.epsilon = epsilon;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.to - this.from <= CHUNK)
+            {
+                for (int k=this.from; k<this.to; ++k)
+                    this.p.bid(this.bidders[k], this.epsilon);
+                return;
+            }
+            int mid = (this.from + this.to) >>> 1;
+            invokeAll(
+                new BidTask(this.p, this.bidders, this.from, mid, this.epsilon),
+                new BidTask(this.p, this.bidders, mid, this.to, this.epsilon));
+        }
+    }
+
+    // オークションの状態（価格と割当は各段階で引き継ぐ）
+    private static class Problem
+    {
+        // rows[i] = i行目のコスト（仮想行と許可された辺のない行は null）
+        final int[][] rows;
+        final int m;
+        final long scale;
+
+        final long[] prices;
+        final int[] toRight;
+        final int[] toLeft;
+        final int[] winner;
+        final int[] bidColumn;
+        final long[] bidValue;
+
+        Problem(int[][] costs, int n, int m, long scale)
+        {
+            this.rows = new int[m][];
+            for (int i=0; i<n; ++i)
+                for (int c : costs[i])
+                    if (c != FORBIDDEN)
+                    {
+                        this.rows[i] = costs[i];
+                        break;
+                    }
+            this.m = m;
+            this.scale = scale;
+            this.prices    = new long[m];
+            this.toRight   = new int[m];
+            this.toLeft    = new int[m];
+            this.winner    = new int[m];
+            this.bidColumn = new int[m];
+            this.bidValue  = new long[m];
+            Arrays.fill(this.winner, -1);
+        }
+
+        // i行目の入札先と入札値を求める
+        void bid(int i, long epsilon)
+        {
+            int[] row = this.rows[i];
+            long best = Long.MIN_VALUE;
+            long second = Long.MIN_VALUE;
+            int bestColumn = -1;
+            for (int j=0; j<this.m; ++j)
+            {
+                long value;
+                if (row == null) value = -this.prices[j];
+                else if (row[j] == FORBIDDEN) continue;
+                else value = -row[j] * this.scale - this.prices[j];
+
+                if (value > best)
+                {
+                    second = best;
+                    best = value;
+                    bestColumn = j;
+                }
+                else if (value > second)
+                {
+                    second = value;
+                }
+            }
+            // 入札先が1つしかない場合は ε だけ上乗せする
+            long increment = (second == Long.MIN_VALUE) ? 0 : best - second;
+            this.bidColumn[i] = bestColumn;
+            this.bidValue[i]  = this.prices[bestColumn] + increment + epsilon;
+        }
+    }
+}
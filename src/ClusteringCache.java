@@ -0,0 +1,159 @@
+package MyTeam.module.algorithm;
+
+import rescuecore2.worldmodel.EntityID;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// 地図の内容から求めたハッシュをキーにして，クラスタリング結果（int 配列）を
+// ローカルのディレクトリに保存/読み込みするキャッシュ
+// 同じ地図・同じ設定で繰り返し実行する場合に k-means を丸ごと省略できる
+//
+// ファイルの形式（ビッグエンディアン）：[MAGIC, 版, 値の数, 値...]
+// 書き込みは一時ファイルに書いてから名前を変えるため，
+// 同時に起動した他のエージェントが書きかけのファイルを読むことはない
+// キャッシュは補助的なものなので，読み書きの失敗は「キャッシュなし」として扱う
+public class ClusteringCache
+{
+    private static final int MAGIC = 0x4B4D4843; // "KMHC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+
+    private final Path directory;
+
+    public ClusteringCache(Path directory)
+    {
+        this.directory = directory;
+    }
+
+    // 要素の ID と座標（ID の昇順に並んでいること），クラスタ数，
+    // エージェントの種別，計算の設定から SHA-256 のキーを作る
+    public static String key(
+        EntityID[] ids, double[] xs, double[] ys,
+        int n, String urn, String parameters)
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(20 * 1024);
+        buffer.putInt(ids.length).putInt(n);
+        for (int i=0; i<ids.length; ++i)
+        {
+            if (buffer.remaining() < 20)
+            {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            buffer.putInt(ids[i].getValue())
+                .putDouble(xs[i]).putDouble(ys[i]);
+        }
+        buffer.flip();
+        digest.update(buffer);
+        digest.update(urn.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+        digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder ret = new StringBuilder(64);
+        for (byte b : digest.digest()) ret.append(String.format("%02x", b));
+        return ret.toString();
+    }
+
+    // key の結果を読み込む（なければ，または壊れていれば null）
+    public int[] load(String key)
+    {
+        Path file = this.fileOf(key);
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            long bytes = channel.size();
+            if (bytes < HEADER_BYTES) return null;
+            MappedByteBuffer map =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+            if (map.getInt() != MAGIC || map.getInt() != VERSION) return null;
+            int count = map.getInt();
+            if (count < 0 || (long)count * Integer.BYTES != bytes - HEADER_BYTES)
+                return null;
+
+            int[] ret = new int[count];
+            IntBuffer values = map.asIntBuffer();
+            values.get(ret);
+            return ret;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    // key の結果として values を保存する（失敗しても例外は投げない）
+    public void store(String key, int[] values)
+    {
+        Path tmp = null;
+        try
+        {
+            Files.createDirectories(this.directory);
+            tmp = Files.createTempFile(this.directory, key, ".tmp");
+
+            ByteBuffer buffer =
+                ByteBuffer.allocate(HEADER_BYTES + values.length * Integer.BYTES);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(values.length);
+            buffer.asIntBuffer().put(values);
+            try (FileChannel channel =
+                 FileChannel.open(tmp, StandardOpenOption.WRITE))
+            {
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(true);
+            }
+
+            try
+            {
+                Files.move(tmp, this.fileOf(key),
+                           StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(tmp, this.fileOf(key),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // キャッシュに書けなくても計算結果はそのまま使える
+        }
+        finally
+        {
+            if (tmp != null)
+            {
+                try
+                {
+                    Files.deleteIfExists(tmp);
+                }
+                catch (IOException e)
+                {
+                    // 一時ファイルが残っても次回の読み込みには影響しない
+                }
+            }
+        }
+    }
+
+    private Path fileOf(String key)
+    {
+        return this.directory.resolve(key + ".bin");
+    }
+}
@@ -0,0 +1,64 @@
+package MyTeam.module.algorithm;
+
+import java.util.concurrent.*;
+
+// 同じ JVM 上の複数エージェントで共有する計算結果の置き場
+// 同じキーの計算は最初に来たエージェントだけが行い，
+// 他のエージェントはその完了を待って同じ結果を使う
+// 完了後の読み込みは ConcurrentHashMap と FutureTask の参照だけでロックを取らない
+//
+// 結果は共有されるため，呼び出し側で書き換えてはいけない
+public final class ClusteringRegistry
+{
+    private static final ConcurrentHashMap<String, FutureTask<?>> RESULTS =
+        new ConcurrentHashMap<>();
+
+    private ClusteringRegistry()
+    {
+    }
+
+    // key の結果を返す（まだなければ computation で計算して登録する）
+    // 計算が失敗した場合は登録を取り消し，次に呼んだエージェントが計算し直す
+    @SuppressWarnings("unchecked")
+    public static <T> T get(String key, Callable<T> computation)
+    {
+        FutureTask<?> task = RESULTS.get(key);
+        if (task == null)
+        {
+            FutureTask<T> created = new FutureTask<>(computation);
+            task = RESULTS.putIfAbsent(key, created);
+            if (task == null)
+            {
+                task = created;
+                created.run();
+            }
+        }
+
+        try
+        {
+            return (T)task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for " + key, e);
+        }
+        catch (ExecutionException e)
+        {
+            RESULTS.remove(key, task);
+            throw new IllegalStateException("computation failed for " + key, e.getCause());
+        }
+    }
+
+    // key の結果を捨てる
+    public static void remove(String key)
+    {
+        RESULTS.remove(key);
+    }
+
+    // 全ての結果を捨てる
+    public static void clear()
+    {
+        RESULTS.clear();
+    }
+}
@@ -0,0 +1,19 @@
+package MyTeam.module.algorithm;
+
+import rescuecore2.standard.entities.Human;
+
+// エージェントとクラスタの割当コストを求めるインタフェース
+// KMeansHungarianAllocator は module.cfg で指定された種類を使う
+public interface CostProvider
+{
+    // module.cfg で選べる種類
+    // EUCLIDEAN: 直線距離（EuclideanCost）
+    // LANDMARK:  道路網上の移動距離（LandmarkCost）
+    enum Type { EUCLIDEAN, LANDMARK }
+
+    // クラスタの中心座標を設定する（costs より前に呼ぶ）
+    void setCentres(double[] cxs, double[] cys);
+
+    // agent からクラスタ cols[0..count) までのコストを ret[0..count) に格納
+    void costs(Human agent, int[] cols, int count, int[] ret);
+}
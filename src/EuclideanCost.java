@@ -0,0 +1,29 @@
+package MyTeam.module.algorithm;
+
+import rescuecore2.standard.entities.Human;
+
+// エージェントの座標とクラスタの中心座標の直線距離をコストにする
+public class EuclideanCost implements CostProvider
+{
+    private double[] cxs;
+    private double[] cys;
+
+    @Override
+    public void setCentres(double[] cxs, double[] cys)
+    {
+        this.cxs = cxs;
+        this.cys = cys;
+    }
+
+    @Override
+    public void costs(Human agent, int[] cols, int count, int[] ret)
+    {
+        double x = agent.getX();
+        double y = agent.getY();
+        for (int k=0; k<count; ++k)
+        {
+            int col = cols[k];
+            ret[k] = (int)Math.hypot(this.cxs[col] - x, this.cys[col] - y);
+        }
+    }
+}
@@ -3,7 +3,295 @@ package MyTeam.module.algorithm;
 import java.util.*;
 
 public class Hungarian{
+    // 最短増加路（Jonker-Volgenant型）ソルバの作業領域
+    // 呼び出しごとに配列を確保しないようスレッド単位で使い回す
+    // （同一JVM上の複数エージェントから同時に呼ばれても安全）
+    private static final ThreadLocal<Workspace> WORKSPACE =
+        ThreadLocal.withInitial(Workspace::new);
+
+    private static final long INF = Long.MAX_VALUE / 4;
+
+    // 割当禁止の辺を表すコスト（到達不能なエージェント/クラスタの組など）
+    // 巨大なコストで重み付けする代わりにこの値を入れると辺ごと無視される
+    public static final int FORBIDDEN = Integer.MAX_VALUE;
+
+    // n×m (n <= m) のコスト行列に対する最小コスト割当を返す
+    // ret[i] = i行目に割り当てられた列番号
+    // 許可された辺だけでは割り当てられない行は -1 になる
+    // （その場合は割り当てる行の数が最大で，その中で総コストが最小の割当を返す）
     public static int[] execute(int[][] mat){
+        return execute(mat, false);
+    }
+
+    // legacy = true の場合は従来のソルバを使う
+    public static int[] execute(int[][] mat, boolean legacy){
+        if (legacy) return executeLegacy(mat);
+
+        int n = mat.length;
+        int m = mat[0].length;
+        if (n > m)
+            throw new IllegalArgumentException("rows must be <= columns: " + n + "x" + m);
+        int[] ret = executeDense(mat, n, m, -1);
+        if (ret != null) return ret;
+        // 全ての行は割り当てられない → 未割当の列を足して解き直す
+        return executeDense(mat, n, m, unassignedCost(mat));
+    }
+
+    // 許可された辺だけで全ての行を割り当てられないと，行を順に割り当てて
+    // 増加路のない行を諦めるだけでは総コストが最小にならない
+    // （先に割り当てた行が後の行のより安い辺を塞ぐことがある）
+    // そこで各行に「割当なし」を表すその行専用の列を足して解き直す
+    // その列のコストを，割り当てる行を1つ増やして変わりうる総コストより大きくすると，
+    // 割り当てる行の数が最大で，その中で総コストが最小の割当になる
+    private static long unassignedCost(int[][] mat){
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int[] row : mat) {
+            for (int c : row) {
+                if (c == FORBIDDEN) continue;
+                min = Math.min(min, c);
+                max = Math.max(max, c);
+            }
+        }
+        if (min > max) return 0;
+        return mat.length * (max - min) + Math.abs(max) + 1;
+    }
+
+    // unassigned < 0 の場合，許可された辺では増加路が作れない行があれば null を返す
+    // unassigned >= 0 の場合は i行目に専用の列 m+i（コスト unassigned）を足して解く
+    private static int[] executeDense(int[][] mat, int n, int m, long unassigned){
+        boolean pad = unassigned >= 0;
+        int mm = pad ? m + n : m;
+        Workspace ws = WORKSPACE.get();
+        ws.ensure(n, mm);
+
+        // 双対変数（ポテンシャル）u, v と
+        // 各列の暫定スラック minv を平坦な配列で保持（1始まり，0番は番兵）
+        long[] u    = ws.u;
+        long[] v    = ws.v;
+        long[] minv = ws.minv;
+        int[]  p    = ws.p;
+        int[]  way  = ws.way;
+        boolean[] used = ws.used;
+
+        Arrays.fill(u, 0, n+1, 0L);
+        Arrays.fill(v, 0, mm+1, 0L);
+        Arrays.fill(p, 0, mm+1, 0);
+
+        for (int i=1;i<=n;++i) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, 0, mm+1, INF);
+            Arrays.fill(used, 0, mm+1, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                int[] row = mat[i0-1];
+                long ui0 = u[i0];
+                long delta = INF;
+                int j1 = 0;
+                // スラックを更新しつつ最小スラックの列を同時に探す
+                for (int j=1;j<=m;++j) {
+                    if (used[j]) continue;
+                    if (row[j-1] != FORBIDDEN) {
+                        long cur = row[j-1] - ui0 - v[j];
+                        if (cur < minv[j]) {
+                            minv[j] = cur;
+                            way[j]  = j0;
+                        }
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                if (pad) {
+                    // 未割当の列は i0行目の列だけが許可されている
+                    int jd = m + i0;
+                    if (!used[jd] && unassigned - ui0 - v[jd] < minv[jd]) {
+                        minv[jd] = unassigned - ui0 - v[jd];
+                        way[jd]  = j0;
+                    }
+                    for (int j=m+1;j<=mm;++j) {
+                        if (!used[j] && minv[j] < delta) {
+                            delta = minv[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                // 許可された辺では増加路が作れない
+                // 辺のない行はそのまま割当なしにし，そうでなければ解き直してもらう
+                if (j1 == 0) {
+                    if (j0 != 0) return null;
+                    break;
+                }
+                for (int j=0;j<=mm;++j) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j]    -= delta;
+                    } else if (minv[j] != INF) {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            if (p[j0] != 0) continue;
+            // 増加路に沿って割当を入れ替える
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int[] ret = new int[n];
+        Arrays.fill(ret, -1);
+        for (int j=1;j<=m;++j) if (p[j] != 0) ret[p[j]-1] = j-1;
+        return ret;
+    }
+
+    // 疎な n×m 二部グラフに対する最小コスト割当を返す
+    // i行目の許可された辺は cols/costs の [rowStart[i], rowStart[i+1]) に並ぶ
+    // 計算量は許可された辺の数に比例するため，
+    // 正方行列に詰め物をして解くより人数が欠けたチームで軽くなる
+    // ret[i] = i行目に割り当てられた列番号（割当不能なら -1）
+    // 全ての行を割り当てられない場合の扱いは execute と同じ
+    public static int[] executeSparse(
+        int n, int m, int[] rowStart, int[] cols, int[] costs){
+        int[] ret = executeSparse(n, m, rowStart, cols, costs, -1);
+        if (ret != null) return ret;
+        return executeSparse(n, m, rowStart, cols, costs,
+                             unassignedCost(n, costs, rowStart[n]));
+    }
+
+    // 疎な場合の unassignedCost(int[][])
+    private static long unassignedCost(int n, int[] costs, int edges){
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int e=0;e<edges;++e) {
+            min = Math.min(min, costs[e]);
+            max = Math.max(max, costs[e]);
+        }
+        if (min > max) return 0;
+        return n * (max - min) + Math.abs(max) + 1;
+    }
+
+    // unassigned の意味は executeDense と同じ（i行目の未割当の列は m+i）
+    private static int[] executeSparse(
+        int n, int m, int[] rowStart, int[] cols, int[] costs, long unassigned){
+        boolean pad = unassigned >= 0;
+        int mm = pad ? m + n : m;
+        Workspace ws = WORKSPACE.get();
+        ws.ensureSparse(n, mm, rowStart[n] + (pad ? n : 0));
+
+        long[] u    = ws.su;
+        long[] v    = ws.sv;
+        long[] dist = ws.dist;
+        int[] rowMatch = ws.rowMatch;
+        int[] colMatch = ws.colMatch;
+        int[] pred     = ws.pred;
+        int[] touched  = ws.touched;
+        int[] mark     = ws.mark;
+
+        Arrays.fill(v, 0, mm, 0L);
+        Arrays.fill(colMatch, 0, mm, -1);
+        Arrays.fill(mark, 0, mm, 0);
+        // 行ごとの最小コストを初期ポテンシャルにする（被約コスト >= 0）
+        for (int i=0;i<n;++i) {
+            rowMatch[i] = -1;
+            long min = INF;
+            for (int e=rowStart[i];e<rowStart[i+1];++e) min = Math.min(min, costs[e]);
+            u[i] = (min == INF) ? 0 : min;
+        }
+
+        // mark[j] == stamp       : この行の探索で到達済み
+        // mark[j] == stamp + 1   : 最短距離が確定済み
+        int stamp = 1;
+        for (int s=0;s<n;++s, stamp+=2) {
+            if (rowStart[s] == rowStart[s+1]) continue;
+            int nTouched = 0;
+            ws.heapSize = 0;
+
+            // 行sから被約コストでDijkstraを行い，未割当の列を探す
+            int sink = -1;
+            long sinkDist = 0;
+            int row = s;
+            long rowDist = 0;
+            for (;;) {
+                int end = rowStart[row+1];
+                for (int e=rowStart[row];e<=end;++e) {
+                    // 最後は未割当の列（pad の場合のみ）
+                    int j;
+                    long c;
+                    if (e < end) {
+                        j = cols[e];
+                        c = costs[e];
+                    } else if (pad) {
+                        j = m + row;
+                        c = unassigned;
+                    } else {
+                        break;
+                    }
+                    if (mark[j] == stamp + 1) continue;
+                    long nd = rowDist + c - u[row] - v[j];
+                    if (mark[j] != stamp) {
+                        mark[j] = stamp;
+                        touched[nTouched++] = j;
+                    } else if (nd >= dist[j]) {
+                        continue;
+                    }
+                    dist[j] = nd;
+                    pred[j] = row;
+                    ws.push(nd, j);
+                }
+                int j = -1;
+                while (ws.heapSize > 0) {
+                    int c = ws.heapCol[0];
+                    long d = ws.heapKey[0];
+                    ws.pop();
+                    if (mark[c] == stamp && d == dist[c]) { j = c; break; }
+                }
+                if (j < 0) break;
+                mark[j] = stamp + 1;
+                if (colMatch[j] < 0) {
+                    sink = j;
+                    sinkDist = dist[j];
+                    break;
+                }
+                row = colMatch[j];
+                rowDist = dist[j];
+            }
+            // 増加路がない → 解き直してもらう
+            if (sink < 0) return null;
+
+            // 確定した列とそれに繋がる行のポテンシャルを更新
+            u[s] += sinkDist;
+            for (int k=0;k<nTouched;++k) {
+                int j = touched[k];
+                if (mark[j] != stamp + 1 || j == sink) continue;
+                long diff = sinkDist - dist[j];
+                v[j] -= diff;
+                u[colMatch[j]] += diff;
+            }
+            // 増加路に沿って割当を入れ替える
+            int j = sink;
+            for (;;) {
+                int r = pred[j];
+                int next = rowMatch[r];
+                rowMatch[r] = j;
+                colMatch[j] = r;
+                if (r == s) break;
+                j = next;
+            }
+        }
+
+        int[] ret = new int[n];
+        for (int i=0;i<n;++i) ret[i] = (rowMatch[i] < m) ? rowMatch[i] : -1;
+        return ret;
+    }
+
+    // 従来のソルバ（行ごとに作業配列を確保し，residue()を都度計算する）
+    public static int[] executeLegacy(int[][] mat){
         int n = mat.length;
         int m = mat[0].length;
         int[] ret = new int[n];
@@ -62,4 +350,88 @@ public class Hungarian{
     public static int residue(int[][] mat, int[] ofsL, int[] ofsR, int i, int j){
         return mat[i][j] + ofsL[i] + ofsR[j];
     }
+
+    // 作業領域（必要な大きさまでしか伸ばさない）
+    private static class Workspace{
+        long[] u    = new long[0];
+        long[] v    = new long[0];
+        long[] minv = new long[0];
+        int[]  p    = new int[0];
+        int[]  way  = new int[0];
+        boolean[] used = new boolean[0];
+
+        // 疎ソルバ用
+        long[] su   = new long[0];
+        long[] sv   = new long[0];
+        long[] dist = new long[0];
+        int[] rowMatch = new int[0];
+        int[] colMatch = new int[0];
+        int[] pred     = new int[0];
+        int[] touched  = new int[0];
+        int[] mark     = new int[0];
+        long[] heapKey = new long[0];
+        int[]  heapCol = new int[0];
+        int heapSize = 0;
+
+        void ensure(int n, int m){
+            if (u.length < n+1) u = new long[n+1];
+            if (v.length < m+1) {
+                v    = new long[m+1];
+                minv = new long[m+1];
+                p    = new int[m+1];
+                way  = new int[m+1];
+                used = new boolean[m+1];
+            }
+        }
+
+        void ensureSparse(int n, int m, int edges){
+            if (su.length < n) {
+                su       = new long[n];
+                rowMatch = new int[n];
+            }
+            if (sv.length < m) {
+                sv       = new long[m];
+                dist     = new long[m];
+                colMatch = new int[m];
+                pred     = new int[m];
+                touched  = new int[m];
+                mark     = new int[m];
+            }
+            if (heapKey.length < edges + 1) {
+                heapKey = new long[edges + 1];
+                heapCol = new int[edges + 1];
+            }
+        }
+
+        // 遅延削除つき二分ヒープ（キー = 暫定距離，値 = 列番号）
+        void push(long key, int col){
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (heapKey[parent] <= key) break;
+                heapKey[i] = heapKey[parent];
+                heapCol[i] = heapCol[parent];
+                i = parent;
+            }
+            heapKey[i] = key;
+            heapCol[i] = col;
+        }
+
+        void pop(){
+            long key = heapKey[--heapSize];
+            int col  = heapCol[heapSize];
+            int i = 0;
+            for (;;) {
+                int c = 2*i + 1;
+                if (c >= heapSize) break;
+                if (c+1 < heapSize && heapKey[c+1] < heapKey[c]) ++c;
+                if (heapKey[c] >= key) break;
+                heapKey[i] = heapKey[c];
+                heapCol[i] = heapCol[c];
+                i = c;
+            }
+            heapKey[i] = key;
+            heapCol[i] = col;
+        }
+    }
 }
@@ -0,0 +1,24 @@
+package MyTeam.module.algorithm;
+
+// Hungarian.execute を AssignmentSolver として使うためのクラス
+public class HungarianSolver implements AssignmentSolver
+{
+    // true の場合は従来のソルバを使う
+    private final boolean legacy;
+
+    public HungarianSolver()
+    {
+        this(false);
+    }
+
+    public HungarianSolver(boolean legacy)
+    {
+        this.legacy = legacy;
+    }
+
+    @Override
+    public int[] solve(int[][] costs)
+    {
+        return Hungarian.execute(costs, this.legacy);
+    }
+}
@@ -0,0 +1,292 @@
+package MyTeam.module.algorithm;
+
+import java.util.*;
+
+import static MyTeam.module.algorithm.Hungarian.FORBIDDEN;
+
+// 割当結果と双対変数（ポテンシャル）を保持し続け，
+// 行（エージェント）や列（クラスタ）のコストが変わったときに
+// 最初から解き直さずに割当を修復する Hungarian
+// 1行/1列の変更あたり O(m^2) で修復できる
+//
+// n < m の場合は全ての列にコスト0で割当可能な仮想行を (m-n) 行足した
+// 正方問題として扱う（仮想行のコストは共有の配列で持つ）
+// こうすると余った列のポテンシャルを気にせずに修復できる
+public class IncrementalHungarian
+{
+    private static final long INF = Long.MAX_VALUE / 4;
+
+    private final int n;
+    private final int m;
+    private final int[][] mat;
+
+    // 割当対象から外された行（内部では仮想行と同じ扱いになる）
+    private final boolean[] removed;
+
+    // 双対変数（被約コスト mat[i][j] - ofsLeft[i] - ofsRight[j] >= 0 を保つ）
+    private final long[] ofsLeft;
+    private final long[] ofsRight;
+
+    // 現在の割当（-1 は割当なし）
+    private final int[] toRight;
+    private final int[] toLeft;
+
+    // 増加路探索の作業領域
+    private final long[] dist;
+    private final int[] pred;
+    private final boolean[] done;
+
+    // n×m (n <= m) のコスト行列を受け取り，最初の割当を求める
+    public IncrementalHungarian(int[][] costs)
+    {
+        this.n = costs.length;
+        this.m = costs[0].length;
+        if (this.n > this.m)
+            throw new IllegalArgumentException(
+                "rows must be <= columns: " + this.n + "x" + this.m);
+
+        this.mat = new int[this.m][];
+        for (int i=0; i<this.n; ++i) this.mat[i] = costs[i].clone();
+        int[] dummy = new int[this.m];
+        for (int i=this.n; i<this.m; ++i) this.mat[i] = dummy;
+        this.removed = new boolean[this.n];
+
+        this.ofsLeft  = new long[this.m];
+        this.ofsRight = new long[this.m];
+        this.toRight  = new int[this.m];
+        this.toLeft   = new int[this.m];
+        this.dist = new long[this.m];
+        this.pred = new int[this.m];
+        this.done = new boolean[this.m];
+
+        Arrays.fill(this.toRight, -1);
+        Arrays.fill(this.toLeft, -1);
+        for (int i=0; i<this.m; ++i)
+        {
+            this.ofsLeft[i] = this.rowMinimum(i);
+            this.augment(i);
+        }
+    }
+
+    public int getRowNumber()
+    {
+        return this.n;
+    }
+
+    public int getColumnNumber()
+    {
+        return this.m;
+    }
+
+    // i行目に割り当てられた列番号（割当なしなら -1）
+    public int getAssignment(int i)
+    {
+        return this.removed[i] ? -1 : this.toRight[i];
+    }
+
+    public int[] getAssignment()
+    {
+        int[] ret = new int[this.n];
+        for (int i=0; i<this.n; ++i) ret[i] = this.getAssignment(i);
+        return ret;
+    }
+
+    // i行目が割当対象から外されているか
+    public boolean isRemoved(int i)
+    {
+        return this.removed[i];
+    }
+
+    // 現在の割当の総コスト
+    public long getCost()
+    {
+        long ret = 0;
+        for (int i=0; i<this.n; ++i)
+        {
+            int j = this.getAssignment(i);
+            if (j >= 0) ret += this.mat[i][j];
+        }
+        return ret;
+    }
+
+    // 最適な割当 initial（initial[i] = i行目の列番号）を現在の割当にする
+    // 最適な割当はどれも同じポテンシャルで相補性条件を満たすため，
+    // ポテンシャルは求めたものをそのまま使える
+    // initial が全ての行を割り当てていないか，最適でない場合は何もせず false を返す
+    public boolean seed(int[] initial)
+    {
+        if (initial.length != this.n) return false;
+        boolean[] used = new boolean[this.m];
+        long cost = 0;
+        for (int i=0; i<this.n; ++i)
+        {
+            int j = initial[i];
+            if (this.removed[i] || this.toRight[i] < 0) return false;
+            if (j < 0 || j >= this.m || used[j]) return false;
+            if (this.mat[i][j] == FORBIDDEN) return false;
+            used[j] = true;
+            cost += this.mat[i][j];
+        }
+        if (cost != this.getCost()) return false;
+
+        Arrays.fill(this.toRight, -1);
+        Arrays.fill(this.toLeft, -1);
+        for (int i=0; i<this.n; ++i)
+        {
+            this.toRight[i] = initial[i];
+            this.toLeft[initial[i]] = i;
+        }
+        // 仮想行には残りの列を順に割り当てる（コストはどれも0）
+        int i = this.n;
+        for (int j=0; j<this.m; ++j)
+        {
+            if (used[j]) continue;
+            this.toRight[i] = j;
+            this.toLeft[j] = i;
+            ++i;
+        }
+        return true;
+    }
+
+    // i行目のコストを差し替えて割当を修復する
+    public void updateRow(int i, int[] costs)
+    {
+        this.removed[i] = false;
+        this.replaceRow(i, costs);
+    }
+
+    // i行目を割当対象から外す（エージェントの死亡など）
+    // 内部ではどの列にもコスト0で割り当てられる仮想行になる
+    public void removeRow(int i)
+    {
+        this.removed[i] = true;
+        this.replaceRow(i, new int[this.m]);
+    }
+
+    private void replaceRow(int i, int[] costs)
+    {
+        System.arraycopy(costs, 0, this.mat[i], 0, this.m);
+
+        int j = this.toRight[i];
+        if (j >= 0)
+        {
+            this.toRight[i] = -1;
+            this.toLeft[j]  = -1;
+        }
+        // i行目の被約コストが非負になるようポテンシャルを取り直す
+        this.ofsLeft[i] = this.rowMinimum(i);
+        this.augment(i);
+        this.repairUnmatched();
+    }
+
+    // j列目のコスト（実在する n 行分）を差し替えて割当を修復する
+    public void updateColumn(int j, int[] costs)
+    {
+        for (int i=0; i<this.n; ++i)
+            if (!this.removed[i]) this.mat[i][j] = costs[i];
+
+        int i = this.toLeft[j];
+        if (i >= 0)
+        {
+            this.toRight[i] = -1;
+            this.toLeft[j]  = -1;
+        }
+        // j列目の被約コストが非負になるようポテンシャルを取り直す
+        long min = INF;
+        for (int r=0; r<this.m; ++r)
+        {
+            if (this.mat[r][j] == FORBIDDEN) continue;
+            min = Math.min(min, this.mat[r][j] - this.ofsLeft[r]);
+        }
+        this.ofsRight[j] = (min == INF) ? 0 : min;
+        if (i >= 0) this.augment(i);
+        this.repairUnmatched();
+    }
+
+    // 列の空きが出たことで割当可能になった行を割り当てる
+    private void repairUnmatched()
+    {
+        for (int i=0; i<this.m; ++i)
+            if (this.toRight[i] < 0) this.augment(i);
+    }
+
+    private long rowMinimum(int i)
+    {
+        long min = INF;
+        int[] row = this.mat[i];
+        for (int j=0; j<this.m; ++j)
+        {
+            if (row[j] == FORBIDDEN) continue;
+            min = Math.min(min, row[j] - this.ofsRight[j]);
+        }
+        return (min == INF) ? 0 : min;
+    }
+
+    // 行sから被約コスト上の最短増加路を探して割当を1つ増やす
+    private boolean augment(int s)
+    {
+        Arrays.fill(this.dist, INF);
+        Arrays.fill(this.done, false);
+
+        int row = s;
+        long rowDist = 0;
+        int sink = -1;
+        for (;;)
+        {
+            int[] costs = this.mat[row];
+            long ofs = this.ofsLeft[row];
+            int best = -1;
+            for (int j=0; j<this.m; ++j)
+            {
+                if (this.done[j]) continue;
+                if (costs[j] != FORBIDDEN)
+                {
+                    long d = rowDist + costs[j] - ofs - this.ofsRight[j];
+                    if (d < this.dist[j])
+                    {
+                        this.dist[j] = d;
+                        this.pred[j] = row;
+                    }
+                }
+                if (this.dist[j] < INF
+                    && (best < 0 || this.dist[j] < this.dist[best]))
+                    best = j;
+            }
+            // 増加路がない → 割当なしのまま
+            if (best < 0) return false;
+
+            this.done[best] = true;
+            if (this.toLeft[best] < 0)
+            {
+                sink = best;
+                break;
+            }
+            row = this.toLeft[best];
+            rowDist = this.dist[best];
+        }
+
+        // 探索済みの行と列のポテンシャルを更新
+        long total = this.dist[sink];
+        this.ofsLeft[s] += total;
+        for (int j=0; j<this.m; ++j)
+        {
+            if (!this.done[j] || j == sink) continue;
+            long diff = total - this.dist[j];
+            this.ofsRight[j] -= diff;
+            this.ofsLeft[this.toLeft[j]] += diff;
+        }
+
+        // 増加路に沿って割当を入れ替える
+        int j = sink;
+        for (;;)
+        {
+            int r = this.pred[j];
+            int next = this.toRight[r];
+            this.toRight[r] = j;
+            this.toLeft[j]  = r;
+            if (r == s) break;
+            j = next;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package MyTeam.module.algorithm;
+
+import java.util.*;
+
+// int 配列を PrecomputeData に1つの文字列として保存するための符号化
+// 各値を zigzag 変換した可変長整数（7bit ずつ，上位bitが継続フラグ）で並べ，
+// 全体を Base64 にする
+// クラスタ番号のような小さな値は1バイトで済むため，
+// Integer のリストで保存するより大幅に小さく，読み込みも1回の走査で済む
+public final class IntArrayCodec
+{
+    private IntArrayCodec()
+    {
+    }
+
+    public static String encode(int[] values)
+    {
+        return encode(values, 0, values.length);
+    }
+
+    // values[from, to) を符号化する
+    public static String encode(int[] values, int from, int to)
+    {
+        byte[] buffer = new byte[(to - from) * 5];
+        int size = 0;
+        for (int k=from; k<to; ++k)
+        {
+            int v = values[k];
+            int z = (v << 1) ^ (v >> 31);
+            while ((z & ~0x7F) != 0)
+            {
+                buffer[size++] = (byte)((z & 0x7F) | 0x80);
+                z >>>= 7;
+            }
+            buffer[size++] = (byte)z;
+        }
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer, size));
+    }
+
+    public static int[] decode(String text)
+    {
+        byte[] bytes = Base64.getDecoder().decode(text);
+
+        // 先に値の数を数えてから配列を確保する
+        int count = 0;
+        for (byte b : bytes) if (b >= 0) ++count;
+
+        int[] ret = new int[count];
+        int k = 0;
+        int z = 0;
+        int shift = 0;
+        for (byte b : bytes)
+        {
+            if (shift > 28)
+                throw new IllegalArgumentException("varint is too long");
+            z |= (b & 0x7F) << shift;
+            if (b < 0)
+            {
+                shift += 7;
+                continue;
+            }
+            ret[k++] = (z >>> 1) ^ -(z & 1);
+            z = 0;
+            shift = 0;
+        }
+        if (shift != 0)
+            throw new IllegalArgumentException("truncated varint");
+        return ret;
+    }
+}
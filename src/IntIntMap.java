@@ -0,0 +1,191 @@
+package MyTeam.module.algorithm;
+
+import java.util.Arrays;
+
+// int → int のハッシュ表（オープンアドレス法，線形探索）
+// EntityID.getValue() をキーにして，Integer への箱詰めや
+// Map.Entry をたどるコストなしに引けるようにする
+// キー 0 は空きを表す値と重なるため別に持つ
+public class IntIntMap
+{
+    private static final int FREE = 0;
+    private static final int MIN_CAPACITY = 8;
+
+    // キーと値を交互に並べた表（[キー, 値, キー, 値, ...]）
+    // 1回の検索で読むキャッシュラインを1本で済ませる
+    private int[] table;
+    private int size = 0;
+    // 使用中のスロット数がこれを超えたら倍に広げる（負荷率 1/2）
+    private int threshold;
+    // スロット数 - 1 と，ハッシュの上位ビットからスロットを得るためのシフト量
+    private int mask;
+    private int shift;
+
+    // キー 0 の値
+    private boolean hasFreeKey = false;
+    private int freeValue;
+
+    // forEach で使う
+    public interface Visitor
+    {
+        void visit(int key, int value);
+    }
+
+    public IntIntMap()
+    {
+        this(MIN_CAPACITY);
+    }
+
+    // expected 個の要素を広げ直しなしで入れられる大きさで作る
+    public IntIntMap(int expected)
+    {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2L * expected) capacity <<= 1;
+        this.allocate(capacity);
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    public boolean containsKey(int key)
+    {
+        if (key == FREE) return this.hasFreeKey;
+        return this.table[this.find(key) << 1] != FREE;
+    }
+
+    // key の値（なければ defaultValue）
+    public int get(int key, int defaultValue)
+    {
+        if (key == FREE) return this.hasFreeKey ? this.freeValue : defaultValue;
+        int[] table = this.table;
+        int slot = hash(key, this.shift);
+        while (true)
+        {
+            int k = table[slot << 1];
+            if (k == key) return table[(slot << 1) + 1];
+            if (k == FREE) return defaultValue;
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    public void put(int key, int value)
+    {
+        if (key == FREE)
+        {
+            if (!this.hasFreeKey) ++this.size;
+            this.hasFreeKey = true;
+            this.freeValue = value;
+            return;
+        }
+        int slot = this.find(key);
+        this.table[(slot << 1) + 1] = value;
+        if (this.table[slot << 1] == FREE)
+        {
+            this.table[slot << 1] = key;
+            ++this.size;
+            if (this.size > this.threshold) this.rehash((this.mask + 1) << 1);
+        }
+    }
+
+    // other の要素を全て入れる
+    public void putAll(IntIntMap other)
+    {
+        other.forEach(this::put);
+    }
+
+    // key を取り除き，取り除いたら true を返す
+    public boolean remove(int key)
+    {
+        if (key == FREE)
+        {
+            if (!this.hasFreeKey) return false;
+            this.hasFreeKey = false;
+            --this.size;
+            return true;
+        }
+        int slot = this.find(key);
+        if (this.table[slot << 1] == FREE) return false;
+        this.shiftBack(slot);
+        --this.size;
+        return true;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(this.table, FREE);
+        this.hasFreeKey = false;
+        this.size = 0;
+    }
+
+    // 全ての要素を訪れる（順序は不定）
+    public void forEach(Visitor visitor)
+    {
+        if (this.hasFreeKey) visitor.visit(FREE, this.freeValue);
+        for (int i=0; i<this.table.length; i+=2)
+            if (this.table[i] != FREE) visitor.visit(this.table[i], this.table[i+1]);
+    }
+
+    // key のあるスロット（なければ入れるべき空きスロット）
+    private int find(int key)
+    {
+        int slot = hash(key, this.shift);
+        while (this.table[slot << 1] != FREE && this.table[slot << 1] != key)
+            slot = (slot + 1) & this.mask;
+        return slot;
+    }
+
+    // slot を空け，後ろに続く要素を探索列が途切れないよう詰め直す
+    private void shiftBack(int slot)
+    {
+        int gap = slot;
+        int next = (gap + 1) & this.mask;
+        while (this.table[next << 1] != FREE)
+        {
+            int home = hash(this.table[next << 1], this.shift);
+            // home が (gap, next] の外なら gap に移してよい
+            if (((next - home) & this.mask) >= ((next - gap) & this.mask))
+            {
+                this.table[gap << 1] = this.table[next << 1];
+                this.table[(gap << 1) + 1] = this.table[(next << 1) + 1];
+                gap = next;
+            }
+            next = (next + 1) & this.mask;
+        }
+        this.table[gap << 1] = FREE;
+    }
+
+    private void rehash(int capacity)
+    {
+        int[] old = this.table;
+        this.allocate(capacity);
+        for (int i=0; i<old.length; i+=2)
+        {
+            if (old[i] == FREE) continue;
+            int slot = this.find(old[i]);
+            this.table[slot << 1] = old[i];
+            this.table[(slot << 1) + 1] = old[i+1];
+        }
+    }
+
+    private void allocate(int capacity)
+    {
+        this.table = new int[capacity << 1];
+        this.mask = capacity - 1;
+        this.shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        this.threshold = capacity >> 1;
+    }
+
+    // key のスロット（黄金比による乗算ハッシュの上位ビット，IntSet と共通）
+    // 連番に近い ID でも表全体に散らばる
+    static int hash(int key, int shift)
+    {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+}
@@ -0,0 +1,115 @@
+package MyTeam.module.algorithm;
+
+import rescuecore2.worldmodel.EntityID;
+import java.util.*;
+
+// getClusterIndex と同じ引き方で，HashMap<EntityID, Integer> と IntIntMap の
+// 検索の速さを比べる
+// 使い方：java MyTeam.module.algorithm.IntIntMapBenchmark [要素数] [検索回数]
+// 要素の ID は地図の Area/エージェントのように疎な正の整数とし，
+// 全て存在する ID を引く場合と，半分が存在しない ID の場合を測る
+public final class IntIntMapBenchmark
+{
+    private static final int WARMUP = 5;
+    private static final int ROUNDS = 10;
+
+    private IntIntMapBenchmark()
+    {
+    }
+
+    public static void main(String[] args)
+    {
+        int size = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+        int lookups = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+
+        Random random = new Random(1);
+        int[] keys = new int[size];
+        Map<EntityID, Integer> boxed = new HashMap<>();
+        IntIntMap primitive = new IntIntMap();
+        for (int i=0; i<size; ++i)
+        {
+            // 重複しない疎な ID
+            keys[i] = 1 + 4 * i + random.nextInt(4);
+            boxed.put(new EntityID(keys[i]), i % 64);
+            primitive.put(keys[i], i % 64);
+        }
+
+        System.out.printf("size=%d lookups=%d%n", size, lookups);
+        System.out.println("-- all hits");
+        run(boxed, primitive, queries(keys, lookups, 0.0, random));
+        System.out.println("-- 50% misses");
+        run(boxed, primitive, queries(keys, lookups, 0.5, random));
+    }
+
+    // 呼び出し側は毎回 EntityID を持っているので，検索用の ID も
+    // 先に作っておく（missRatio の割合は存在しない ID）
+    private static EntityID[] queries(
+        int[] keys, int lookups, double missRatio, Random random)
+    {
+        EntityID[] ret = new EntityID[lookups];
+        for (int k=0; k<lookups; ++k)
+        {
+            int key = keys[random.nextInt(keys.length)];
+            ret[k] = new EntityID(random.nextDouble() < missRatio ? -key : key);
+        }
+        return ret;
+    }
+
+    private static void run(
+        Map<EntityID, Integer> boxed, IntIntMap primitive, EntityID[] queries)
+    {
+        for (int round=0; round<WARMUP; ++round)
+        {
+            lookupBoxed(boxed, queries);
+            lookupPrimitive(primitive, queries);
+        }
+
+        long boxedNanos = Long.MAX_VALUE;
+        long primitiveNanos = Long.MAX_VALUE;
+        long boxedSum = 0;
+        long primitiveSum = 0;
+        for (int round=0; round<ROUNDS; ++round)
+        {
+            long start = System.nanoTime();
+            boxedSum = lookupBoxed(boxed, queries);
+            boxedNanos = Math.min(boxedNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            primitiveSum = lookupPrimitive(primitive, queries);
+            primitiveNanos = Math.min(primitiveNanos, System.nanoTime() - start);
+        }
+        if (boxedSum != primitiveSum)
+            throw new IllegalStateException(
+                "results differ: " + boxedSum + " != " + primitiveSum);
+
+        report("HashMap<EntityID, Integer>", boxedNanos, queries.length);
+        report("IntIntMap", primitiveNanos, queries.length);
+        System.out.printf("speedup %.2fx%n", (double)boxedNanos / primitiveNanos);
+    }
+
+    // 以前の getClusterIndex と同じ containsKey + get
+    private static long lookupBoxed(Map<EntityID, Integer> map, EntityID[] queries)
+    {
+        long sum = 0;
+        for (EntityID id : queries)
+        {
+            if (!map.containsKey(id)) sum += -1;
+            else sum += map.get(id);
+        }
+        return sum;
+    }
+
+    private static long lookupPrimitive(IntIntMap map, EntityID[] queries)
+    {
+        long sum = 0;
+        for (EntityID id : queries) sum += map.get(id.getValue(), -1);
+        return sum;
+    }
+
+    private static void report(String name, long nanos, int lookups)
+    {
+        System.out.printf("%-28s %8.2f ns/lookup %10.1f Mlookups/s%n",
+                          name, (double)nanos / lookups,
+                          lookups * 1e3 / nanos);
+    }
+}
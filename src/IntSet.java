@@ -0,0 +1,147 @@
+package MyTeam.module.algorithm;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// int の集合（オープンアドレス法，線形探索）
+// EntityID.getValue() を要素にして，HashSet<EntityID> の代わりに使う
+// 作りは IntIntMap と同じで，値を持たない点だけが異なる
+public class IntSet
+{
+    private static final int FREE = 0;
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] keys;
+    private int size = 0;
+    // 使用中のスロット数がこれを超えたら倍に広げる（負荷率 1/2）
+    private int threshold;
+    // スロット数 - 1 と，ハッシュの上位ビットからスロットを得るためのシフト量
+    private int mask;
+    private int shift;
+
+    // 要素 0 は空きを表す値と重なるため別に持つ
+    private boolean hasFreeKey = false;
+
+    public IntSet()
+    {
+        this(MIN_CAPACITY);
+    }
+
+    // expected 個の要素を広げ直しなしで入れられる大きさで作る
+    public IntSet(int expected)
+    {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2L * expected) capacity <<= 1;
+        this.allocate(capacity);
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    public boolean contains(int key)
+    {
+        if (key == FREE) return this.hasFreeKey;
+        return this.keys[this.find(key)] != FREE;
+    }
+
+    // key を加え，新たに加わったら true を返す
+    public boolean add(int key)
+    {
+        if (key == FREE)
+        {
+            if (this.hasFreeKey) return false;
+            this.hasFreeKey = true;
+            ++this.size;
+            return true;
+        }
+        int slot = this.find(key);
+        if (this.keys[slot] != FREE) return false;
+        this.keys[slot] = key;
+        ++this.size;
+        if (this.size > this.threshold) this.rehash(this.keys.length << 1);
+        return true;
+    }
+
+    // key を取り除き，取り除いたら true を返す
+    public boolean remove(int key)
+    {
+        if (key == FREE)
+        {
+            if (!this.hasFreeKey) return false;
+            this.hasFreeKey = false;
+            --this.size;
+            return true;
+        }
+        int slot = this.find(key);
+        if (this.keys[slot] == FREE) return false;
+        this.shiftBack(slot);
+        --this.size;
+        return true;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(this.keys, FREE);
+        this.hasFreeKey = false;
+        this.size = 0;
+    }
+
+    // 全ての要素を訪れる（順序は不定）
+    public void forEach(IntConsumer visitor)
+    {
+        if (this.hasFreeKey) visitor.accept(FREE);
+        for (int slot=0; slot<this.keys.length; ++slot)
+            if (this.keys[slot] != FREE) visitor.accept(this.keys[slot]);
+    }
+
+    // key のあるスロット（なければ入れるべき空きスロット）
+    private int find(int key)
+    {
+        int slot = IntIntMap.hash(key, this.shift);
+        while (this.keys[slot] != FREE && this.keys[slot] != key)
+            slot = (slot + 1) & this.mask;
+        return slot;
+    }
+
+    // slot を空け，後ろに続く要素を探索列が途切れないよう詰め直す
+    private void shiftBack(int slot)
+    {
+        int gap = slot;
+        int next = (gap + 1) & this.mask;
+        while (this.keys[next] != FREE)
+        {
+            int home = IntIntMap.hash(this.keys[next], this.shift);
+            // home が (gap, next] の外なら gap に移してよい
+            if (((next - home) & this.mask) >= ((next - gap) & this.mask))
+            {
+                this.keys[gap] = this.keys[next];
+                gap = next;
+            }
+            next = (next + 1) & this.mask;
+        }
+        this.keys[gap] = FREE;
+    }
+
+    private void rehash(int capacity)
+    {
+        int[] oldKeys = this.keys;
+        this.allocate(capacity);
+        for (int key : oldKeys)
+            if (key != FREE) this.keys[this.find(key)] = key;
+    }
+
+    private void allocate(int capacity)
+    {
+        this.keys = new int[capacity];
+        this.mask = capacity - 1;
+        this.shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        this.threshold = capacity >> 1;
+    }
+}
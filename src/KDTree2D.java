@@ -0,0 +1,208 @@
+package MyTeam.module.algorithm;
+
+// 平面上の点（セントロイドなど）に対する最近傍/k近傍探索用の KD木
+// 点の座標配列は参照するだけなので，座標を変えたら作り直す（O(k log k)）
+//
+// 探索の作業領域（Search）は呼び出し側で使い回せる
+// （大量に問い合わせる場合はスレッドやまとまりごとに1つ持つ）
+//
+// 探索結果は全ての点を走査した場合と完全に一致する
+// （距離が同じ点は番号の小さい方を優先し，枝刈りは分割面までの距離が
+//   暫定の距離より真に大きい場合に限る）
+public class KDTree2D
+{
+    private final double[] xs;
+    private final double[] ys;
+    // 区間 [lo, hi) の中央 mid = (lo+hi)/2 の点がその部分木の根になる
+    private final int[] order;
+    // 各ノードの分割軸（true なら x 座標で分割）
+    private final boolean[] splitX;
+
+    public KDTree2D(double[] xs, double[] ys)
+    {
+        this(xs, ys, xs.length);
+    }
+
+    // xs/ys の先頭 size 個の点で木を作る
+    public KDTree2D(double[] xs, double[] ys, int size)
+    {
+        this.xs = xs;
+        this.ys = ys;
+        this.order = new int[size];
+        this.splitX = new boolean[size];
+        for (int i=0; i<size; ++i) this.order[i] = i;
+        this.build(0, size);
+    }
+
+    public int size()
+    {
+        return this.order.length;
+    }
+
+    // (x, y) に最も近い点の番号（点がなければ -1）
+    public int nearest(double x, double y)
+    {
+        return this.nearest(x, y, new Search(1));
+    }
+
+    // 作業領域 s を使う nearest
+    public int nearest(double x, double y, Search s)
+    {
+        s.reset(1);
+        this.search(s, 0, this.order.length, x, y);
+        return (s.size == 0) ? -1 : s.indices[0];
+    }
+
+    // (x, y) に近い順に最大 k 個の点の番号を out に入れ，入れた数を返す
+    public int kNearest(double x, double y, int k, int[] out)
+    {
+        return this.kNearest(x, y, k, out, new Search(k));
+    }
+
+    // 作業領域 s（k 個以上入るもの）を使う kNearest
+    public int kNearest(double x, double y, int k, int[] out, Search s)
+    {
+        if (k <= 0) return 0;
+        s.reset(Math.min(k, this.order.length));
+        this.search(s, 0, this.order.length, x, y);
+        System.arraycopy(s.indices, 0, out, 0, s.size);
+        return s.size;
+    }
+
+    // [lo, hi) の点を分割軸の中央値で左右に分ける
+    private void build(int lo, int hi)
+    {
+        if (hi - lo <= 1) return;
+
+        // 広がりの大きい方の軸で分割する
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int k=lo; k<hi; ++k)
+        {
+            int i = this.order[k];
+            minX = Math.min(minX, this.xs[i]);
+            maxX = Math.max(maxX, this.xs[i]);
+            minY = Math.min(minY, this.ys[i]);
+            maxY = Math.max(maxY, this.ys[i]);
+        }
+        boolean byX = (maxX - minX) >= (maxY - minY);
+        double[] coords = byX ? this.xs : this.ys;
+
+        int mid = (lo + hi) >>> 1;
+        this.select(coords, lo, hi - 1, mid);
+        this.splitX[mid] = byX;
+        this.build(lo, mid);
+        this.build(mid + 1, hi);
+    }
+
+    // order[lo..hi] を並べ替え，order[target] に target 番目に小さい点を置く
+    // （左側は座標が以下，右側は以上になる）
+    private void select(double[] coords, int lo, int hi, int target)
+    {
+        int[] order = this.order;
+        while (lo < hi)
+        {
+            // 3点の中央値を軸にする
+            int m = (lo + hi) >>> 1;
+            if (coords[order[m]] < coords[order[lo]]) swap(order, m, lo);
+            if (coords[order[hi]] < coords[order[lo]]) swap(order, hi, lo);
+            if (coords[order[hi]] < coords[order[m]]) swap(order, hi, m);
+            double pivot = coords[order[m]];
+
+            int i = lo, j = hi;
+            while (i <= j)
+            {
+                while (coords[order[i]] < pivot) ++i;
+                while (coords[order[j]] > pivot) --j;
+                if (i <= j) swap(order, i++, j--);
+            }
+            if (target <= j) hi = j;
+            else if (target >= i) lo = i;
+            else return;
+        }
+    }
+
+    private static void swap(int[] a, int i, int j)
+    {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    private void search(Search s, int lo, int hi, double x, double y)
+    {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        int i = this.order[mid];
+
+        double dx = this.xs[i] - x;
+        double dy = this.ys[i] - y;
+        s.offer(i, dx*dx + dy*dy);
+        if (hi - lo == 1) return;
+
+        double diff = this.splitX[mid] ? x - this.xs[i] : y - this.ys[i];
+        boolean leftFirst = diff < 0;
+        if (leftFirst) this.search(s, lo, mid, x, y);
+        else this.search(s, mid + 1, hi, x, y);
+
+        // 分割面の向こう側は，面までの距離が暫定の距離以下の場合だけ探す
+        if (s.size < s.limit || diff*diff <= s.worst())
+        {
+            if (leftFirst) this.search(s, mid + 1, hi, x, y);
+            else this.search(s, lo, mid, x, y);
+        }
+    }
+
+    // 探索の作業領域：暫定の近傍（距離，番号の順に並べて保持）
+    // 1つの探索の間しか使わないため，同時に探索しなければ使い回せる
+    public static final class Search
+    {
+        final int[] indices;
+        final double[] dists;
+        // 今の探索で集める数と，集めた数
+        int limit;
+        int size = 0;
+
+        // 最大 capacity 個の近傍を集められる作業領域
+        public Search(int capacity)
+        {
+            this.indices = new int[Math.max(1, capacity)];
+            this.dists = new double[Math.max(1, capacity)];
+        }
+
+        void reset(int k)
+        {
+            if (k > this.indices.length)
+                throw new IllegalArgumentException(
+                    "k exceeds search capacity: " + k + " > " + this.indices.length);
+            this.limit = k;
+            this.size = 0;
+        }
+
+        double worst()
+        {
+            return this.dists[this.size - 1];
+        }
+
+        void offer(int index, double d2)
+        {
+            int k = this.limit;
+            if (this.size == k && !less(d2, index, this.dists[k-1], this.indices[k-1]))
+                return;
+            int pos = (this.size < k) ? this.size++ : k-1;
+            while (pos > 0 && less(d2, index, this.dists[pos-1], this.indices[pos-1]))
+            {
+                this.dists[pos] = this.dists[pos-1];
+                this.indices[pos] = this.indices[pos-1];
+                --pos;
+            }
+            this.dists[pos] = d2;
+            this.indices[pos] = index;
+        }
+
+        private static boolean less(double d1, int i1, double d2, int i2)
+        {
+            return d1 < d2 || (d1 == d2 && i1 < i2);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package MyTeam.module.algorithm;
+
+// KMeansPP.execute の反復を打ち切る条件
+// 次のいずれかを満たした時点で反復を終える
+//   - ラベルが1つも変わらなかった
+//   - セントロイドの最大移動量が maxShift 以下になった
+//   - 慣性（各点と所属セントロイドの二乗距離の和）の相対変化が
+//     relativeInertiaDelta 以下になった
+//   - 反復回数が maxIterations に達した
+public class KMeansConvergence
+{
+    private final int maxIterations;
+    private final boolean stopOnNoChange;
+    private final double maxShift;
+    private final double relativeInertiaDelta;
+
+    public KMeansConvergence(
+        int maxIterations, boolean stopOnNoChange,
+        double maxShift, double relativeInertiaDelta)
+    {
+        if (maxIterations < 0)
+            throw new IllegalArgumentException("maxIterations must be >= 0");
+        this.maxIterations = maxIterations;
+        this.stopOnNoChange = stopOnNoChange;
+        this.maxShift = maxShift;
+        this.relativeInertiaDelta = relativeInertiaDelta;
+    }
+
+    // 従来通り rep 回だけ反復する
+    public static KMeansConvergence fixed(int rep)
+    {
+        return new KMeansConvergence(rep, false, -1.0, -1.0);
+    }
+
+    // ラベルが変わらなくなるまで（最大 maxIterations 回）反復する
+    public static KMeansConvergence untilStable(int maxIterations)
+    {
+        return new KMeansConvergence(maxIterations, true, -1.0, -1.0);
+    }
+
+    public int getMaxIterations()
+    {
+        return this.maxIterations;
+    }
+
+    // 1回分の反復の結果から打ち切るかを判定する
+    // changed : ラベルが変わった点の数
+    // shift   : セントロイドの最大移動量
+    // inertia / previousInertia : 今回と前回の慣性（前回がない場合は NaN）
+    public boolean isConverged(
+        int changed, double shift, double inertia, double previousInertia)
+    {
+        if (this.stopOnNoChange && changed == 0) return true;
+        if (shift <= this.maxShift) return true;
+        if (!Double.isNaN(previousInertia) && previousInertia > 0.0)
+        {
+            double delta = Math.abs(previousInertia - inertia) / previousInertia;
+            if (delta <= this.relativeInertiaDelta) return true;
+        }
+        return false;
+    }
+}
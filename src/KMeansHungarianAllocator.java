@@ -6,40 +6,161 @@ import adf.core.component.module.algorithm.StaticClustering;
 import adf.core.agent.module.ModuleManager;
 import adf.core.agent.develop.DevelopData;
 import adf.core.agent.precompute.PrecomputeData;
+import adf.core.agent.communication.MessageManager;
 import rescuecore2.worldmodel.EntityID;
 import rescuecore2.standard.entities.*;
 import static rescuecore2.standard.entities.StandardEntityURN.*;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import static java.util.Comparator.*;
 
 public class KMeansHungarianAllocator extends StaticClustering
+    implements TourProvider
 {
     // --- フィールド ---
 
-    // エージェントID → クラスタ番号 の対応表
-    private final Map<EntityID, Integer> assignment = new HashMap<>();
+    // エージェントID の値 → クラスタ番号 の対応表
+    private final IntIntMap assignment = new IntIntMap();
 
     // k-means++ のクラスタリング実行オブジェクト
     private KMeansPP clusterer;
 
+    // 要素（Area）のID の値 → クラスタ番号 の対応表
+    // k-means のラベルから作り，エージェント以外の問い合わせに O(1) で答える
+    private final IntIntMap entityIndex = new IntIntMap();
+
+    // 各クラスタの建物の巡回順（未計算のクラスタは null）
+    // 事前計算では全クラスタ分を保存し，事前計算なしの場合は
+    // 問い合わせがあったクラスタだけ計算する
+    private final List<List<EntityID>> tours = new ArrayList<>();
+
     // クラスタ数（未設定時は 0 として扱う）
     private int n = 0;
 
     // このモジュールを動かしている自エージェントの種別（FIRE_BRIGADE 等）
     private final StandardEntityURN urn;
 
+    // true の場合は従来の Hungarian ソルバを使う（module.cfg で切替）
+    private final boolean legacyHungarian;
+
+    // エージェントとクラスタの割当に使うソルバ（module.cfg で切替）
+    private final AssignmentSolver solver;
+
+    // 疎な割当で各エージェントに候補として残す近いクラスタの数
+    // （0 の場合は常に密なコスト行列で解く）
+    private final int sparseCandidates;
+    // クラスタ数がこの値以上のときに疎な割当を使う
+    private final int sparseThreshold;
+
+    // エージェントとクラスタの割当コストの種類（module.cfg で切替）
+    private final CostProvider.Type costType;
+    // LANDMARK の場合のランドマークの数と，正確な距離を求める近い候補の数
+    private final int landmarks;
+    private final int exactCandidates;
+    // 割当コストを求めるオブジェクト（最初に使う時に作る）
+    private CostProvider costProvider;
+
+    // k-means の反復計算の方式（LLOYD/HAMERLY，どちらも結果は同じ）
+    private final KMeansPP.Algorithm algorithm;
+    // k-means の初期セントロイドの選び方（EXACT/FENWICK/KMEANS_PARALLEL）
+    private final KMeansPP.Seeding seeding;
+    // 事前計算なしの場合，要素数がこの値以上の地図ではミニバッチ k-means を使う
+    // （0 なら使わない）
+    private final int miniBatchThreshold;
+    // ミニバッチ k-means の1回あたりの点の数と更新回数
+    private final int miniBatchSize;
+    private final int miniBatchIterations;
+    // 乱数の種を変えて k-means を行う回数（慣性が最小の結果を採用する）
+    private final int restarts;
+    // 直前の initClusterer で集めた要素（ID の昇順）とその座標
+    private EntityID[] targetIDs;
+    private double[] targetXs;
+    private double[] targetYs;
+    // 事前計算なしの場合に結果を保存するキャッシュ（使わない場合は null）
+    // module.cfg の KMeansHungarianAllocator.CacheDirectory で保存先を指定する
+    private final ClusteringCache cache;
+    // k-means の割当を並列に行うスレッド数（結果はスレッド数によらない）
+    // スレッドプールは同じ JVM のエージェントで共有される
+    private final int parallelism;
+
+    // true の場合は updateInfo() で毎ステップ割当を再調整する（module.cfg で切替）
+    private final boolean rebalance;
+
+    // 割当の再調整用：ポテンシャルと割当を保持した Hungarian と
+    // その各行に対応するエージェントID，コストを求めた時の位置，クラスタ中心
+    private IncrementalHungarian rebalancer;
+    private EntityID[] rebalanceAgents;
+    private EntityID[] rebalancePositions;
+    private double[] rebalanceXs;
+    private double[] rebalanceYs;
+
+    // 事前計算なしの場合に同種のエージェントで共有する結果
+    // （共有されるため書き換えない）
+    private static final class PreparedResult
+    {
+	final int[] labels;
+	final IntIntMap assignment;
+
+	PreparedResult(int[] labels, IntIntMap assignment)
+	{
+	    this.labels = labels;
+	    this.assignment = assignment;
+	}
+    }
+
     // --- 定数 ---
 
-    // k-means++ の繰り返し回数
-    private static final int REP_PRECOMPUTE = 20;
+    // k-means++ の繰り返し回数の上限
+    // ラベルが変わらなくなった時点で打ち切る
+    // （事前計算では時間に余裕があるため上限を大きくとる）
+    private static final int REP_PRECOMPUTE = 100;
     private static final int REP_PREPARE = 20;
+    private static final KMeansConvergence CONVERGENCE_PRECOMPUTE =
+	KMeansConvergence.untilStable(REP_PRECOMPUTE);
+    private static final KMeansConvergence CONVERGENCE_PREPARE =
+	KMeansConvergence.untilStable(REP_PREPARE);
 
     // 事前計算の保存キー（urn で名前空間化する）
     private static final String MODULE_NAME =
 	"MyTeam.module.algorithm.KMeansHungarianAllocator";
-    private static final String PD_CLUSTER_N = MODULE_NAME + ".n";
-    private static final String PD_CLUSTER_M = MODULE_NAME + ".m";
-    private static final String PD_CLUSTER_A = MODULE_NAME + ".a";
+    private static final String PD_CLUSTER_BLOB = MODULE_NAME + ".blob";
+    // 保存形式の版（形式を変えたら増やす）
+    private static final int PD_FORMAT_VERSION = 2;
+
+    // module.cfg の設定キー
+    private static final String KEY_LEGACY_HUNGARIAN =
+	"KMeansHungarianAllocator.LegacyHungarian";
+    private static final String KEY_REBALANCE =
+	"KMeansHungarianAllocator.Rebalance";
+    private static final String KEY_ASSIGNMENT_SOLVER =
+	"KMeansHungarianAllocator.AssignmentSolver";
+    private static final String KEY_SPARSE_CANDIDATES =
+	"KMeansHungarianAllocator.SparseCandidates";
+    private static final String KEY_SPARSE_THRESHOLD =
+	"KMeansHungarianAllocator.SparseThreshold";
+    private static final String KEY_COST_PROVIDER =
+	"KMeansHungarianAllocator.CostProvider";
+    private static final String KEY_LANDMARKS =
+	"KMeansHungarianAllocator.Landmarks";
+    private static final String KEY_EXACT_CANDIDATES =
+	"KMeansHungarianAllocator.ExactCandidates";
+    private static final String KEY_ALGORITHM =
+	"KMeansHungarianAllocator.Algorithm";
+    private static final String KEY_SEEDING =
+	"KMeansHungarianAllocator.Seeding";
+    private static final String KEY_MINI_BATCH_THRESHOLD =
+	"KMeansHungarianAllocator.MiniBatchThreshold";
+    private static final String KEY_MINI_BATCH_SIZE =
+	"KMeansHungarianAllocator.MiniBatchSize";
+    private static final String KEY_MINI_BATCH_ITERATIONS =
+	"KMeansHungarianAllocator.MiniBatchIterations";
+    private static final String KEY_RESTARTS =
+	"KMeansHungarianAllocator.Restarts";
+    private static final String KEY_CACHE_DIRECTORY =
+	"KMeansHungarianAllocator.CacheDirectory";
+    private static final String KEY_PARALLELISM =
+	"KMeansHungarianAllocator.Parallelism";
 
     // --- コンストラクタ ---
 
@@ -51,6 +172,41 @@ public class KMeansHungarianAllocator extends StaticClustering
     {
         super(ai, wi, si, mm, dd);
         this.urn = this.agentInfo.me().getStandardURN();
+        this.legacyHungarian = mm.getModuleConfig()
+	    .getBooleanValue(KEY_LEGACY_HUNGARIAN, false);
+        this.rebalance = mm.getModuleConfig()
+	    .getBooleanValue(KEY_REBALANCE, false);
+        this.solver = this.createSolver(mm.getModuleConfig().getValue(
+	    KEY_ASSIGNMENT_SOLVER, HungarianSolver.class.getName()));
+        this.sparseCandidates = mm.getModuleConfig()
+	    .getIntValue(KEY_SPARSE_CANDIDATES, 8);
+        this.sparseThreshold = mm.getModuleConfig()
+	    .getIntValue(KEY_SPARSE_THRESHOLD, 100);
+        this.costType = CostProvider.Type.valueOf(mm.getModuleConfig()
+	    .getValue(KEY_COST_PROVIDER, CostProvider.Type.EUCLIDEAN.name()));
+        this.landmarks = mm.getModuleConfig().getIntValue(KEY_LANDMARKS, 8);
+        this.exactCandidates = mm.getModuleConfig()
+	    .getIntValue(KEY_EXACT_CANDIDATES, 8);
+        this.algorithm = KMeansPP.Algorithm.valueOf(mm.getModuleConfig()
+	    .getValue(KEY_ALGORITHM, KMeansPP.Algorithm.HAMERLY.name()));
+        this.seeding = KMeansPP.Seeding.valueOf(mm.getModuleConfig()
+	    .getValue(KEY_SEEDING, KMeansPP.Seeding.EXACT.name()));
+        this.miniBatchThreshold = mm.getModuleConfig()
+	    .getIntValue(KEY_MINI_BATCH_THRESHOLD, 20000);
+        this.miniBatchSize = mm.getModuleConfig()
+	    .getIntValue(KEY_MINI_BATCH_SIZE, 1024);
+        this.miniBatchIterations = mm.getModuleConfig()
+	    .getIntValue(KEY_MINI_BATCH_ITERATIONS, 100);
+        this.restarts = mm.getModuleConfig().getIntValue(KEY_RESTARTS, 1);
+        this.parallelism = mm.getModuleConfig().getIntValue(
+	    KEY_PARALLELISM, Runtime.getRuntime().availableProcessors());
+	// キャッシュは保存先を指定した場合だけ使う（既定の空文字列では使わない）
+	// 起動したディレクトリに勝手に書き込んだり，古い結果が残って
+	// 気付かないうちにクラスタリングが変わったりしないようにする
+        String cacheDirectory = mm.getModuleConfig()
+	    .getValue(KEY_CACHE_DIRECTORY, "");
+        this.cache = cacheDirectory.isEmpty() ?
+	    null : new ClusteringCache(Paths.get(cacheDirectory));
     }
 
     // --- 外部公開API ---
@@ -69,26 +225,43 @@ public class KMeansHungarianAllocator extends StaticClustering
         this.assignment.clear();
 
 	this.initN();                  //クラスタ数を決定
-	this.initClusterer();          // k-means++の初期セントロイドを用意
-	this.clusterer.execute(REP_PRECOMPUTE); // k-means++を実行
+	this.initClusterer(null);      // k-means++の初期セントロイドを用意
+	this.executeClusterer(CONVERGENCE_PRECOMPUTE, true); // k-means++を実行
 	this.assignAgentsToClusters(); // Hungarianで1対1割当を決定
-
-	// 結果をPrecomputeDataに保存（urnで名前空間化）
-	pd.setInteger(this.addSuffixToKey(PD_CLUSTER_N), this.n);
-	for (Map.Entry<EntityID, Integer> e : this.assignment.entrySet())
-        {
-	    EntityID agent = e.getKey();
-	    int i = e.getValue();
-	    // i番目のクラスタの全要素を取得
-	    Collection<EntityID> cluster =
-		this.clusterer.getClusterMembers(i);
-	    // i番目のクラスタの要素を保存
-	    pd.setEntityIDList(
-                this.addSuffixToKey(PD_CLUSTER_M, i),
-		new ArrayList<>(cluster));
-	    // i番目のクラスタに対応するエージェントを保存
-	    pd.setEntityID(this.addSuffixToKey(PD_CLUSTER_A, i), agent);
+	this.resetTours();             // 巡回順は割当の後に計算する
+
+	// 結果を1つの符号化された配列として PrecomputeData に保存（urnで名前空間化）
+	// [形式の版, クラスタ数, 要素数, 各要素のクラスタ番号...,
+	//  エージェント数, (エージェントID, クラスタ番号)...,
+	//  (巡回順の長さ, 建物ID...) をクラスタ数だけ]
+	// 要素は initClusterer と同じく ID の昇順に並べた順番で表す
+	int[] labels = this.clusterer.getLabels();
+	this.buildEntityIndex(labels);
+	int tourSize = 0;
+	for (int i=0; i<this.n; ++i) tourSize += 1 + this.getTour(i).size();
+	int[] blob = new int[
+	    4 + labels.length + 2*this.assignment.size() + tourSize];
+	int pos = 0;
+	blob[pos++] = PD_FORMAT_VERSION;
+	blob[pos++] = this.n;
+	blob[pos++] = labels.length;
+	System.arraycopy(labels, 0, blob, pos, labels.length);
+	pos += labels.length;
+	blob[pos++] = this.assignment.size();
+	int[] cursor = {pos};
+	this.assignment.forEach((agent, cluster) -> {
+		blob[cursor[0]++] = agent;
+		blob[cursor[0]++] = cluster;
+	    });
+	pos = cursor[0];
+	for (int i=0; i<this.n; ++i)
+	{
+	    List<EntityID> tour = this.getTour(i);
+	    blob[pos++] = tour.size();
+	    for (EntityID id : tour) blob[pos++] = id.getValue();
 	}
+	pd.setString(this.addSuffixToKey(PD_CLUSTER_BLOB),
+		     IntArrayCodec.encode(blob));
 	return this;
     }
     
@@ -103,31 +276,59 @@ public class KMeansHungarianAllocator extends StaticClustering
 	// 念のため前回結果をクリア
         this.assignment.clear();
 
-	// Precomputeから保存された結果の読み込み
+	// Precomputeから保存された結果の読み込み（precompute の形式を参照）
+	int[] blob = IntArrayCodec.decode(
+	    pd.getString(this.addSuffixToKey(PD_CLUSTER_BLOB)));
+	int pos = 0;
+	if (blob[pos++] != PD_FORMAT_VERSION)
+	    throw new IllegalStateException(
+		"事前計算の形式が異なります: " + blob[0]);
 	// クラスタ数の読み込み
-	this.n = pd.getInteger(this.addSuffixToKey(PD_CLUSTER_N));
-	// 各クラスタに属するエンティティID群を格納するリストを用意
-	// リスト全体の要素数 = クラスタ数（n）
-	// リストの各要素（Collection<EntityID>）=
-	//                    1つのクラスタを構成するEntityIDの集合
-	List<Collection<EntityID>> clusters = new ArrayList<>(this.n);
+	this.n = blob[pos++];
+	// 各要素のクラスタ番号を読み込み，KMeansPP の結果を復元
+	int size = blob[pos++];
+	int[] labels = Arrays.copyOfRange(blob, pos, pos + size);
+	pos += size;
+	this.initClusterer(labels);
+	// エージェントとクラスタの結び付きを復元
+	// （割り当てるエージェントがいないクラスタもある）
+	int agentCount = blob[pos++];
+	for (int k=0; k<agentCount; ++k, pos+=2)
+	    this.assignment.put(blob[pos], blob[pos+1]);
+	// 各クラスタの巡回順を復元
 	for (int i=0; i<this.n; ++i)
-        {
-	    // i番目のクラスタの要素の読み込み
-	    List<EntityID> cluster =
-                pd.getEntityIDList(this.addSuffixToKey(PD_CLUSTER_M, i));
-	    // i番目のクラスタと結び付けられたエージェントの読み込み
-	    EntityID agent =
-                pd.getEntityID(this.addSuffixToKey(PD_CLUSTER_A, i));
-
-	    clusters.add(cluster);
-	    // エージェントとクラスタの結び付きを復元
-	    this.assignment.put(agent, i);
+	{
+	    int length = blob[pos++];
+	    List<EntityID> tour = new ArrayList<>(length);
+	    for (int k=0; k<length; ++k) tour.add(new EntityID(blob[pos++]));
+	    this.tours.set(i, Collections.unmodifiableList(tour));
 	}
 
-	// PrecomputeDataから読み込んだクラスタ情報を用いて
-	// KMeansPPクラスタリングのインスタンスを復元
-	this.clusterer = new KMeansPP(this.n, clusters);
+	// 割当の再調整用の状態を復元
+	// クラスタ中心は要素の座標の平均から求め直したものを使う
+	if (this.rebalance && this.n > 0)
+	{
+	    double[] cxs = new double[this.n];
+	    double[] cys = new double[this.n];
+	    for (int i=0; i<this.n; ++i)
+	    {
+		cxs[i] = this.clusterer.getClusterX(i);
+		cys[i] = this.clusterer.getClusterY(i);
+	    }
+	    List<StandardEntity> agents = this.collectAgents();
+	    if (!agents.isEmpty() && agents.size() <= this.n)
+	    {
+		this.initRebalancer(
+		    agents, cxs, cys, this.buildCostMatrix(agents, cxs, cys));
+		// 事前計算の割当から始める（最適でなければ求め直した割当を使う）
+		// こうしないと最初の再調整で割当が全員分入れ替わることがある
+		int[] initial = new int[agents.size()];
+		for (int row=0; row<agents.size(); ++row)
+		    initial[row] = this.assignment.get(
+			agents.get(row).getID().getValue(), -1);
+		if (!this.rebalancer.seed(initial)) this.updateAssignment();
+	    }
+	}
 	
         return this;
     }
@@ -142,15 +343,103 @@ public class KMeansHungarianAllocator extends StaticClustering
         if (this.getCountPreparate() > 1) return this;
 
 	this.initN();                  //クラスタ数を決定
-	this.initClusterer();          // k-means++の初期セントロイドを用意
-	this.clusterer.execute(REP_PREPARE); // k-means++を実行
-	this.assignAgentsToClusters(); // Hungarianで1対1割当を決定
+	this.initClusterer(null);      // k-means++の初期セントロイドを用意
+	// 同じ JVM 上の同種のエージェントとは結果を共有する
+	// （最初の1体だけが計算し，他はその完了を待って同じ結果を使う）
+	String key = this.cacheKey();
+	PreparedResult result = ClusteringRegistry.get(
+	    key + ":" + this.agentsKey() + ":" + this.assignmentSettings(),
+	    () -> this.computePrepared(key));
+	this.restoreClusterer(result.labels);
+	// 割当の再調整用の状態は各エージェントが個別に持つ
+	if (this.rebalance) this.assignAgentsToClusters();
+	else this.assignment.putAll(result.assignment);
  	
         return this;
     }
 
-    // --- クラスタリング計算本体（この例では未使用）---
-    
+    // 事前計算なしの場合のクラスタリングと割当の計算
+    // 同じ地図・同じ設定の結果がキャッシュにあれば k-means を省略する
+    private PreparedResult computePrepared(String key)
+    {
+	int[] labels = (this.cache == null) ? null : this.cache.load(key);
+	if (labels != null && labels.length == this.targetIDs.length)
+	{
+	    this.restoreClusterer(labels);
+	}
+	else
+	{
+	    this.executeClusterer(CONVERGENCE_PREPARE, false); // k-means++を実行
+	    if (this.cache != null)
+		this.cache.store(key, this.clusterer.getLabels());
+	}
+
+	IntIntMap assignment = new IntIntMap();
+	if (!this.rebalance)
+	{
+	    this.assignAgentsToClusters(); // Hungarianで1対1割当を決定
+	    assignment.putAll(this.assignment);
+	    this.assignment.clear();
+	}
+	return new PreparedResult(this.clusterer.getLabels(), assignment);
+    }
+
+    // --- クラスタリング計算本体 ---
+
+    // 割当の再調整が有効な場合，毎ステップ
+    // ・死亡したエージェントを割当から外し，
+    // ・いる場所の変わったエージェントのコストを今の位置から求め直して，
+    // 割当を差分だけ修復する（1人あたり O(n^2)）
+    // ADF は下位のモジュールに calc() を呼ばず updateInfo() だけを伝えるため，
+    // ここで行う
+    // 注意：各エージェントは自分の知覚した情報で判定するため，
+    //       死亡や移動を知るタイミングがずれると一時的に割当が食い違う
+    @Override
+    public Clustering updateInfo(MessageManager mm)
+    {
+	super.updateInfo(mm);
+	// 重複した処理の実行を回避
+	if (this.getCountUpdateInfo() > 1) return this;
+	if (this.rebalancer == null) return this;
+
+	boolean changed = false;
+	int[] cols = null;
+	int[] rowCosts = null;
+	for (int row=0; row<this.rebalanceAgents.length; ++row)
+	{
+	    if (this.rebalancer.isRemoved(row)) continue;
+	    StandardEntity e = this.worldInfo.getEntity(this.rebalanceAgents[row]);
+	    if (!(e instanceof Human)) continue;
+	    Human h = (Human)e;
+	    if (h.isHPDefined() && h.getHP() <= 0)
+	    {
+		this.rebalancer.removeRow(row);
+		changed = true;
+		continue;
+	    }
+
+	    // いる場所が変わった場合だけコストを求め直す
+	    if (!h.isPositionDefined() || !h.isXDefined() || !h.isYDefined())
+		continue;
+	    if (h.getPosition().equals(this.rebalancePositions[row])) continue;
+	    this.rebalancePositions[row] = h.getPosition();
+	    if (cols == null)
+	    {
+		cols = new int[this.n];
+		for (int col=0; col<this.n; ++col) cols[col] = col;
+		rowCosts = new int[this.n];
+		this.costProvider().setCentres(this.rebalanceXs, this.rebalanceYs);
+	    }
+	    this.costProvider().costs(h, cols, this.n, rowCosts);
+	    this.rebalancer.updateRow(row, rowCosts);
+	    changed = true;
+	}
+
+	// 変化があった場合のみ割当表を作り直す
+	if (changed) this.updateAssignment();
+	return this;
+    }
+
     @Override
     public Clustering calc()
     {
@@ -177,8 +466,12 @@ public class KMeansHungarianAllocator extends StaticClustering
     @Override
     public int getClusterIndex(EntityID id)
     {
-        if (!this.assignment.containsKey(id)) return -1;
-        return this.assignment.get(id);
+	// 要素なら属するクラスタ，エージェントなら割り当てられたクラスタ
+	// （問い合わせの大半は要素なので，要素の表を先に引いて外れを減らす．
+	//   要素は Area，エージェントは Human のため ID は重ならない）
+	int ret = this.entityIndex.get(id.getValue(), -1);
+	if (ret >= 0) return ret;
+	return this.assignment.get(id.getValue(), -1);
     }
 
     // 他のモジュールがi番目のクラスタ要素をStandardEntityで取得する際に
@@ -206,6 +499,16 @@ public class KMeansHungarianAllocator extends StaticClustering
         return this.clusterer.getClusterMembers(i);
     }
 
+    // i番目のクラスタの建物の巡回順（割り当てられたエージェントの位置から）
+    @Override
+    public List<EntityID> getTour(int i)
+    {
+	if (i < 0 || i >= this.n || this.clusterer == null)
+	    return Collections.emptyList();
+	if (this.tours.get(i) == null) this.tours.set(i, this.buildTour(i));
+	return this.tours.get(i);
+    }
+
     // --- 内部処理 ---
     
     // k-means++のクラスタ数の決定処理
@@ -234,7 +537,8 @@ public class KMeansHungarianAllocator extends StaticClustering
     }
 
     // k-means++の初期セントロイドの決定処理
-    private void initClusterer()
+    // labels が null でなければ，保存済みのクラスタ番号から結果を復元する
+    private void initClusterer(int[] labels)
     {
 	// 次のオブジェクトを全て取得
 	// 道路/消火栓
@@ -268,56 +572,367 @@ public class KMeansHungarianAllocator extends StaticClustering
 	}
 
 	// KMeansPP の初期化
+	this.targetIDs = is;
+	this.targetXs = xs;
+	this.targetYs = ys;
+	if (labels != null)
+	{
+	    this.restoreClusterer(labels);
+	    return;
+	}
 	this.clusterer = new KMeansPP(is, xs, ys, this.n);
+	this.clusterer.setAlgorithm(this.algorithm);
+	this.clusterer.setSeeding(this.seeding);
+	this.clusterer.setParallelism(this.parallelism);
+    }
+
+    // 保存済みのクラスタ番号から KMeansPP の結果を復元
+    private void restoreClusterer(int[] labels)
+    {
+	if (labels.length != this.targetIDs.length)
+	    throw new IllegalStateException(
+		"事前計算時と要素数が異なります: "
+		+ labels.length + " != " + this.targetIDs.length);
+	this.clusterer = new KMeansPP(
+	    this.targetIDs, this.targetXs, this.targetYs, this.n, labels);
+	this.buildEntityIndex(labels);
+	this.resetTours();
+    }
+
+    // 要素 → クラスタ番号 の対応表を k-means のラベルから作り直す
+    private void buildEntityIndex(int[] labels)
+    {
+	this.entityIndex.clear();
+	for (int j=0; j<labels.length; ++j)
+	    if (labels[j] >= 0)
+		this.entityIndex.put(this.targetIDs[j].getValue(), labels[j]);
+    }
+
+    // 巡回順を全て未計算に戻す
+    private void resetTours()
+    {
+	this.tours.clear();
+	for (int i=0; i<this.n; ++i) this.tours.add(null);
+    }
+
+    // i番目のクラスタの建物を，割り当てられたエージェントの位置
+    // （いなければクラスタ中心）から巡る順番を求める
+    private List<EntityID> buildTour(int i)
+    {
+	List<EntityID> buildings = new ArrayList<>();
+	for (EntityID id : this.clusterer.getClusterMembers(i))
+	    if (this.worldInfo.getEntity(id) instanceof Building)
+		buildings.add(id);
+
+	int m = buildings.size();
+	double[] xs = new double[m];
+	double[] ys = new double[m];
+	for (int k=0; k<m; ++k)
+	{
+	    Area area = (Area)this.worldInfo.getEntity(buildings.get(k));
+	    xs[k] = area.getX();
+	    ys[k] = area.getY();
+	}
+
+	double startX = this.clusterer.getClusterX(i);
+	double startY = this.clusterer.getClusterY(i);
+	int[] agent = {-1};
+	this.assignment.forEach((id, cluster) -> {
+		if (cluster == i) agent[0] = id;
+	    });
+	if (agent[0] >= 0)
+	{
+	    StandardEntity e = this.worldInfo.getEntity(new EntityID(agent[0]));
+	    if (e instanceof Human && ((Human)e).isXDefined()
+		&& ((Human)e).isYDefined())
+	    {
+		startX = ((Human)e).getX();
+		startY = ((Human)e).getY();
+	    }
+	}
+
+	int[] order = TourBuilder.build(xs, ys, startX, startY);
+	List<EntityID> ret = new ArrayList<>(m);
+	for (int k : order) ret.add(buildings.get(k));
+	return Collections.unmodifiableList(ret);
+    }
+
+    // キャッシュのキー（地図の要素と座標，クラスタ数，種別，結果に効く設定）
+    // 反復の方式やスレッド数は結果を変えないためキーに含めない
+    private String cacheKey()
+    {
+	String parameters = "seeding=" + this.seeding
+	    + ";restarts=" + this.restarts
+	    + ";miniBatch=" + this.miniBatchThreshold
+	    + "/" + this.miniBatchSize + "/" + this.miniBatchIterations
+	    + ";rep=" + REP_PREPARE;
+	return ClusteringCache.key(
+	    this.targetIDs, this.targetXs, this.targetYs,
+	    this.n, this.urn.toString(), parameters);
+    }
+
+    // 割当の結果に効く設定（共有する結果のキーに含める）
+    private String assignmentSettings()
+    {
+	return "solver=" + this.solver.getClass().getName()
+	    + ";legacy=" + this.legacyHungarian
+	    + ";rebalance=" + this.rebalance
+	    + ";sparse=" + this.sparseCandidates + "/" + this.sparseThreshold
+	    + ";cost=" + this.costType
+	    + "/" + this.landmarks + "/" + this.exactCandidates;
+    }
+
+    // 割当の対象になるエージェントの ID と座標から作るキー
+    private String agentsKey()
+    {
+	List<StandardEntity> agents = this.collectAgents();
+	EntityID[] ids = new EntityID[agents.size()];
+	double[] xs = new double[agents.size()];
+	double[] ys = new double[agents.size()];
+	for (int i=0; i<agents.size(); ++i)
+	{
+	    Human agent = (Human)agents.get(i);
+	    ids[i] = agent.getID();
+	    xs[i] = agent.getX();
+	    ys[i] = agent.getY();
+	}
+	return ClusteringCache.key(ids, xs, ys, 0, this.urn.toString(), "agents");
+    }
+
+    // k-means を実行
+    // 事前計算なしで要素数が閾値以上の場合は全ての点を毎回走査しないミニバッチ版を使う
+    // （ミニバッチ版は再試行回数と収束の条件を使わない．
+    //   時間に余裕のある事前計算では常に通常の k-means を使う）
+    // 再試行回数が2以上の場合は，種を変えた k-means を並列に行い最良の結果を使う
+    private void executeClusterer(KMeansConvergence policy, boolean precompute)
+    {
+	if (!precompute && this.miniBatchThreshold > 0
+	    && this.targetIDs.length >= this.miniBatchThreshold)
+	    this.clusterer.executeMiniBatch(
+		this.miniBatchSize, this.miniBatchIterations);
+	else if (this.restarts > 1)
+	    this.clusterer.executeRestarts(
+		this.restarts, this.parallelism, policy);
+	else
+	    this.clusterer.execute(policy);
     }
 
     // Hungarianアルゴリズムを用いてエージェントにクラスタを割当
-    // 前提：エージェント数とクラスタ数が一致（1対1の割当）
+    // エージェント数とクラスタ数が異なる場合は少ない側が全て割り当てられ，
+    // 余った側は割当なしになる
     private void assignAgentsToClusters()
     {
-	// 同種類のエージェントを全て取得
-	List<StandardEntity> agents = new ArrayList<>(
-            this.worldInfo.getEntitiesOfType(this.urn));
-	// 取得したエージェントをIDでソート
-	agents.sort(comparing(e -> e.getID().getValue()));
+	List<StandardEntity> agents = this.collectAgents();
 
-	// 「エージェント数 = クラスタ数」（前提）をチェック
-	if (agents.size() != this.n) {
-            throw new IllegalStateException(
-		"前提条件違反: agents.size()=" +
-		agents.size() + " と n=" + this.n + " が一致していません。");
-        }
-	
-	// エージェントとクラスタの距離をコスト行列（n × n）に格納
-	int[][] costs = new int[this.n][this.n];
-	for (int row=0; row<this.n; ++row)
+	int a = agents.size();
+	if (a == 0 || this.n == 0) return;
+
+	// クラスタの中心座標を取得
+	double[] cxs = new double[this.n];
+	double[] cys = new double[this.n];
+	for (int col=0; col<this.n; ++col)
 	{
-	    Human agent = (Human)agents.get(row);
-	    double x = agent.getX();
-	    double y = agent.getY();
+	    cxs[col] = this.clusterer.getClusterX(col);
+	    cys[col] = this.clusterer.getClusterY(col);
+	}
 
-	    for (int col=0; col<this.n; ++col)
-            {
-		// col番目のクラスタのX/Y座標を取得
-		double cx = this.clusterer.getClusterX(col);
-		double cy = this.clusterer.getClusterY(col);
-		// エージェントの座標とクラスタの座標間の距離を計算
-		costs[row][col] = (int)Math.hypot(cx-x, cy-y);
+	// クラスタ数が多い場合は，各エージェントの近いクラスタだけを
+	// 候補にした疎な問題で解く（割り当てられない場合のみ密な問題で解き直す）
+	if (!this.rebalance && a <= this.n
+	    && this.sparseCandidates > 0 && this.n >= this.sparseThreshold
+	    && this.assignSparse(agents, cxs, cys))
+	    return;
+
+	int[][] costs = this.buildCostMatrix(agents, cxs, cys);
+
+	// 割当の再調整が有効な場合は，再調整用の Hungarian で最初の割当を求め，
+	// そのポテンシャルと割当を updateInfo() で使い回す
+	if (this.rebalance && a <= this.n)
+	{
+	    this.initRebalancer(agents, cxs, cys, costs);
+	    for (int row=0; row<a; ++row)
+	    {
+		int col = this.rebalancer.getAssignment(row);
+		if (col >= 0) this.assignment.put(agents.get(row).getID().getValue(), col);
 	    }
+	    return;
 	}
 
-	// Hungarianで最適な1対1割当を決定
-	int[] result = Hungarian.execute(costs);
-	for (int row=0; row<agents.size(); ++row)
+	// ソルバ（既定はHungarian）で最適な1対1割当を決定
+	// ソルバは「行数 <= 列数」を前提とするため，
+	// エージェントの方が多い場合は転置して解き，結果を反転する
+	int[] result;
+	if (a <= this.n)
+	{
+	    result = this.solver.solve(costs);
+	}
+	else
+	{
+	    int[][] transposed = new int[this.n][a];
+	    for (int row=0; row<a; ++row)
+		for (int col=0; col<this.n; ++col)
+		    transposed[col][row] = costs[row][col];
+	    int[] inverse = this.solver.solve(transposed);
+	    result = new int[a];
+	    Arrays.fill(result, -1);
+	    for (int col=0; col<this.n; ++col)
+		if (inverse[col] >= 0) result[inverse[col]] = col;
+	}
+
+	for (int row=0; row<a; ++row)
         {
+	    if (result[row] < 0) continue;
 	    EntityID id = agents.get(row).getID();
 	    // エージェントのIDにクラスタの番号を割り当てて保存
-	    this.assignment.put(id, result[row]);
+	    this.assignment.put(id.getValue(), result[row]);
         }
     }
 
+    // 同種類のエージェントを全て取得し，IDでソートして返す
+    // 座標が分からないエージェントは割当対象から外す
+    private List<StandardEntity> collectAgents()
+    {
+	List<StandardEntity> agents = new ArrayList<>();
+	for (StandardEntity e : this.worldInfo.getEntitiesOfType(this.urn))
+	{
+	    Human h = (Human)e;
+	    if (h.isXDefined() && h.isYDefined()) agents.add(e);
+	}
+	agents.sort(comparing(e -> e.getID().getValue()));
+	return agents;
+    }
+
+    // 各エージェントに近い k 個のクラスタだけを候補にして割当を解く
+    // 全員を割り当てられた場合のみ結果を保存して true を返す
+    private boolean assignSparse(
+	List<StandardEntity> agents, double[] cxs, double[] cys)
+    {
+	int a = agents.size();
+	int k = Math.min(this.sparseCandidates, this.n);
+
+	// 候補の辺を行ごとに並べる（CSR形式）
+	int[] rowStart = new int[a+1];
+	int[] cols = new int[a*k];
+	int[] costs = new int[a*k];
+	// クラスタの中心の KD木で各エージェントの近傍を探す
+	// （候補は直線距離で選び，コストだけを設定された方法で求める）
+	KDTree2D tree = new KDTree2D(cxs, cys);
+	int[] nearest = new int[k];
+	KDTree2D.Search search = new KDTree2D.Search(k);
+	int[] rowCosts = new int[k];
+	CostProvider provider = this.costProvider();
+	provider.setCentres(cxs, cys);
+	for (int row=0; row<a; ++row)
+	{
+	    Human agent = (Human)agents.get(row);
+	    int base = row*k;
+
+	    // 距離の近い順に k 個（同じ距離なら番号の小さい順）
+	    tree.kNearest(agent.getX(), agent.getY(), k, nearest, search);
+	    System.arraycopy(nearest, 0, cols, base, k);
+	    provider.costs(agent, nearest, k, rowCosts);
+	    System.arraycopy(rowCosts, 0, costs, base, k);
+	    rowStart[row+1] = base + k;
+	}
+
+	int[] result = Hungarian.executeSparse(a, this.n, rowStart, cols, costs);
+	for (int r : result) if (r < 0) return false;
+
+	for (int row=0; row<a; ++row)
+	    this.assignment.put(agents.get(row).getID().getValue(), result[row]);
+	return true;
+    }
+
+    // エージェントとクラスタのコスト（既定は直線距離）を
+    // コスト行列（エージェント数 × n）に格納
+    private int[][] buildCostMatrix(
+	List<StandardEntity> agents, double[] cxs, double[] cys)
+    {
+	CostProvider provider = this.costProvider();
+	provider.setCentres(cxs, cys);
+	int[] cols = new int[this.n];
+	for (int col=0; col<this.n; ++col) cols[col] = col;
+
+	int[][] costs = new int[agents.size()][this.n];
+	for (int row=0; row<agents.size(); ++row)
+	{
+	    // エージェントとクラスタの中心の間のコストを計算
+	    Human agent = (Human)agents.get(row);
+	    provider.costs(agent, cols, this.n, costs[row]);
+	}
+	return costs;
+    }
+
+    // 割当コストを求めるオブジェクト
+    // LANDMARK の場合は道路網とランドマークからの距離表を最初に1回だけ作る
+    private CostProvider costProvider()
+    {
+	if (this.costProvider == null)
+	{
+	    this.costProvider = (this.costType == CostProvider.Type.LANDMARK)
+		? new LandmarkCost(RoadGraph.build(this.worldInfo),
+				   this.landmarks, this.exactCandidates)
+		: new EuclideanCost();
+	}
+	return this.costProvider;
+    }
+
+    // 割当の再調整用の Hungarian を初期化
+    private void initRebalancer(
+	List<StandardEntity> agents, double[] cxs, double[] cys, int[][] costs)
+    {
+	this.rebalancer = new IncrementalHungarian(costs);
+	this.rebalanceAgents = new EntityID[agents.size()];
+	this.rebalancePositions = new EntityID[agents.size()];
+	for (int row=0; row<agents.size(); ++row)
+	{
+	    Human agent = (Human)agents.get(row);
+	    this.rebalanceAgents[row] = agent.getID();
+	    if (agent.isPositionDefined())
+		this.rebalancePositions[row] = agent.getPosition();
+	}
+	this.rebalanceXs = cxs;
+	this.rebalanceYs = cys;
+    }
+
+    // 割当の再調整用の Hungarian の割当で割当表を作り直す
+    private void updateAssignment()
+    {
+	this.assignment.clear();
+	for (int row=0; row<this.rebalanceAgents.length; ++row)
+	{
+	    int col = this.rebalancer.getAssignment(row);
+	    if (col >= 0) this.assignment.put(this.rebalanceAgents[row].getValue(), col);
+	}
+    }
+
     // --- 補助メソッド ---
 
+    // module.cfg に書かれたクラス名から割当ソルバを生成
+    // クラスタリングと違い，ソルバはエージェントの情報も事前計算の結果も
+    // 持たない計算だけのクラスなので，mm.getModule で作る AbstractModule には
+    // せずクラス名から直接生成する
+    // 付属のソルバには LegacyHungarian の設定を渡す（AuctionSolver は
+    // 全員を割り当てられない場合に Hungarian に任せる）
+    private AssignmentSolver createSolver(String className)
+    {
+	if (className.equals(HungarianSolver.class.getName()))
+	    return new HungarianSolver(this.legacyHungarian);
+	if (className.equals(AuctionSolver.class.getName()))
+	    return new AuctionSolver(true, ForkJoinPool.commonPool(),
+				     new HungarianSolver(this.legacyHungarian));
+	try
+	{
+	    return (AssignmentSolver)Class.forName(className)
+		.getDeclaredConstructor().newInstance();
+	}
+	catch (ReflectiveOperationException | ClassCastException e)
+	{
+	    throw new IllegalArgumentException(
+		"AssignmentSolver を生成できません: " + className, e);
+	}
+    }
+
     // urn（エージェント種別）単位でキーを名前空間化
 
     // 保存用キーにエージェントの種類を区別するための接尾辞を足すメソッド
@@ -326,12 +941,5 @@ public class KMeansHungarianAllocator extends StaticClustering
 	return path + "." + this.urn;
     }
 
-    // 保存用キーにエージェントの種類と要素番号を区別するための
-    // 接尾辞を足すメソッド
-    private String addSuffixToKey(String path, int i)
-    {
-	return this.addSuffixToKey(path) + "." + i;
-    }
-
 // クラスの終わり
 }
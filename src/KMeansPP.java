@@ -2,7 +2,8 @@ package MyTeam.module.algorithm;
 
 import rescuecore2.worldmodel.EntityID;
 import java.util.*;
-import static java.util.Comparator.*;
+import java.util.concurrent.*;
+import java.util.stream.IntStream;
 
 public class KMeansPP
 {
@@ -10,11 +11,93 @@ public class KMeansPP
     private double[] xs;
     private double[] ys;
 
-    private Cluster[] result;
-
     private int n;
 
+    // --- 計算結果 ---
+    // 各クラスタの中心座標
+    private double[] cxs;
+    private double[] cys;
+    // 各点が属するクラスタ番号（-1 は未所属）
+    private int[] labels;
+    // クラスタの要素（CSR形式，getClusterMembers() などで初めて作る）
+    // i 番目のクラスタの要素は memberArray[memberOffsets[i], memberOffsets[i+1])
+    private int[] memberOffsets;
+    private EntityID[] memberArray;
+    // 各クラスタの要素の読み取り専用ビュー（コピーせずに memberArray を参照する）
+    private List<List<EntityID>> memberViews;
+    // 実際に行った反復回数と最後の割当での慣性（二乗距離の和）
+    private int iterations;
+    private double inertia = Double.NaN;
+
+    // --- 反復計算の作業領域（点ごとにオブジェクトを作らないよう使い回す）---
+    private double[] sumxs;
+    private double[] sumys;
+    private int[] counts;
+
+    // --- Hamerly 法の作業領域 ---
+    // 各点から2番目に近いセントロイドまでの距離の下界
+    private double[] lower;
+    // 各セントロイドから最も近い他のセントロイドまでの距離の半分
+    private double[] halfGaps;
+    // 直前の更新での各セントロイドの移動量
+    private double[] shifts;
+    // 下界が計算済みか
+    private boolean boundsReady;
+    // 直前の更新での最大移動量，そのセントロイド，2番目の移動量
+    private int maxShiftIndex;
+    private double maxShift;
+    private double secondShift;
+
+    // --- 並列化 ---
+    // 割当を並列に行うスレッド数（1 以下なら逐次）
+    private int parallelism = 1;
+    // execute の間だけ使うスレッドプール（sharedPool で得た共有のもの）
+    private ForkJoinPool pool;
+    // スレッド数ごとのスレッドプール（JVM 内の全ての KMeansPP で共有する）
+    // エージェントごと・実行ごとにプールを作ると，1つの JVM で多数の
+    // エージェントが動く場合にスレッドが CPU の数を大きく超えるため
+    private static final ConcurrentHashMap<Integer, ForkJoinPool> POOLS =
+	new ConcurrentHashMap<>();
+    // まとまりごとの部分和
+    private ChunkPartial[] chunkPartials;
+    // 1つのまとまりに含める点の数
+    // （スレッド数によらず固定することで結果を再現可能にする）
+    private static final int CHUNK = 4096;
+
+    // 反復計算の方式
+    //   LLOYD   : 毎回全ての点と全てのセントロイドの距離を計算する
+    //   HAMERLY : 距離の上界/下界で，ラベルが変わりえない点の計算を省く
+    //             （同じシードなら LLOYD と全く同じ結果になる）
+    public enum Algorithm { LLOYD, HAMERLY }
+    private Algorithm algorithm = Algorithm.LLOYD;
+
+    // 初期セントロイドの選び方
+    //   EXACT           : D(x)^2 を毎回線形に走査する従来の k-means++
+    //   FENWICK         : Fenwick木で O(log N) 抽選する k-means++
+    //   KMEANS_PARALLEL : k-means||（多めに候補を選んでから絞り込む）
+    public enum Seeding { EXACT, FENWICK, KMEANS_PARALLEL }
+    private Seeding seeding = Seeding.EXACT;
+    // k-means|| で候補を選ぶラウンド数
+    private static final int PARALLEL_SEEDING_ROUNDS = 5;
+
+    // LLOYD の割当でセントロイドの KD木を使うクラスタ数の下限
+    // （これより少ない場合は全てのセントロイドを走査した方が速い）
+    private static final int KD_TREE_THRESHOLD = 32;
+    // 割当の間だけ使うセントロイドの KD木（使わない場合は null）
+    private KDTree2D centerTree;
+
+    // 浮動小数点の丸め誤差に対する下界/上界の安全係数
+    private static final double BOUND_MARGIN = 1e-9;
+
     private static final int COMMON_SEED = 123456789;
+    // 乱数の種（既定は COMMON_SEED）
+    private long randomSeed = COMMON_SEED;
+    // 再試行ごとの乱数の種をずらす量（黄金比に基づく定数）
+    private static final long RESTART_SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    // 直前の executeRestarts での各再試行の慣性と，採用した再試行の番号
+    private double[] restartInertias;
+    private int bestRestart = -1;
 
     public KMeansPP(
         EntityID[] targets, double[] xs, double[] ys, int n)
@@ -28,81 +111,499 @@ public class KMeansPP
     public KMeansPP(
         int n, List<Collection<EntityID>> memberz)
     {
-        this.result = new Cluster[n];
         this.n = n;
+        this.cxs = new double[n];
+        this.cys = new double[n];
 
+        this.memberOffsets = new int[n+1];
         for (int i=0; i<n; ++i)
         {
             Collection<EntityID> members = memberz.get(i);
-            this.result[i] = new Cluster(members);
+            this.memberOffsets[i+1] = this.memberOffsets[i]
+                + ((members == null) ? 0 : members.size());
         }
+        this.memberArray = new EntityID[this.memberOffsets[n]];
+        for (int i=0; i<n; ++i)
+        {
+            Collection<EntityID> members = memberz.get(i);
+            if (members == null) continue;
+            int pos = this.memberOffsets[i];
+            for (EntityID id : members) this.memberArray[pos++] = id;
+        }
+    }
+
+    // 保存済みのラベルから結果を復元する（反復は行わない）
+    // labels[j] = targets[j] の属するクラスタ番号（-1 は未所属）
+    // セントロイドは各クラスタの要素の座標の平均から求め直す
+    public KMeansPP(
+	EntityID[] targets, double[] xs, double[] ys, int n, int[] labels)
+    {
+	if (labels.length != targets.length)
+	    throw new IllegalArgumentException(
+		"labels must have one entry per target: "
+		+ labels.length + " != " + targets.length);
+	this.targets = targets;
+	this.xs = xs;
+	this.ys = ys;
+	this.n = n;
+	this.labels = labels;
+	this.cxs = new double[n];
+	this.cys = new double[n];
+
+	int[] counts = new int[n];
+	for (int j=0; j<labels.length; ++j)
+	{
+	    int i = labels[j];
+	    if (i < 0) continue;
+	    if (i >= n)
+		throw new IllegalArgumentException("label out of range: " + i);
+	    this.cxs[i] += xs[j];
+	    this.cys[i] += ys[j];
+	    ++counts[i];
+	}
+	for (int i=0; i<n; ++i)
+	{
+	    if (counts[i] == 0) continue;
+	    this.cxs[i] /= counts[i];
+	    this.cys[i] /= counts[i];
+	}
     }
 
+    // rep 回だけ反復する
     public void execute(int rep)
     {
-        this.result = init(this.targets, this.xs, this.ys, this.n);
+	this.execute(KMeansConvergence.fixed(rep));
+    }
 
-        for (int i=0; i<rep; ++i)
-        {
-            Arrays.stream(this.result).forEach(Cluster::clearMembers);
-            for (int j=0; j<this.targets.length; ++j)
-                assign(this.result, this.targets[j], this.xs[j], this.ys[j]);
-            Arrays.stream(this.result).forEach(Cluster::updateCenter);
-        }
+    // 収束条件 policy を満たすまで反復し，実際の反復回数を返す
+    public int execute(KMeansConvergence policy)
+    {
+	this.init();
+
+	double previous = Double.NaN;
+	this.iterations = 0;
+	if (this.parallelism > 1 && this.chunkPartials.length > 1)
+	    this.pool = sharedPool(this.parallelism);
+	try
+	{
+	    while (this.iterations < policy.getMaxIterations())
+	    {
+		int changed = this.assign();
+		double shift = this.updateCenters();
+		++this.iterations;
+		if (policy.isConverged(changed, shift, this.inertia, previous)) break;
+		previous = this.inertia;
+	    }
+	}
+	finally
+	{
+	    this.pool = null;
+	}
+
+	this.resetMembers();
+	return this.iterations;
+    }
+
+    // 乱数の種を変えて restarts 回 k-means を行い，慣性が最小の結果を採用する
+    // 最大 threads 個のスレッドで再試行を同時に実行する
+    // r 番目の再試行の種は randomSeed + r * RESTART_SEED_STEP で決まるため，
+    // スレッド数や完了順によらず結果は同じになる（同じ慣性なら番号の小さい方）
+    // 0 番目の再試行は execute(policy) と同じ結果になる
+    public int executeRestarts(
+	int restarts, int threads, KMeansConvergence policy)
+    {
+	if (restarts <= 0)
+	    throw new IllegalArgumentException("restarts must be positive");
+
+	KMeansPP[] runs = new KMeansPP[restarts];
+	for (int r=0; r<restarts; ++r)
+	{
+	    KMeansPP run = new KMeansPP(this.targets, this.xs, this.ys, this.n);
+	    run.setAlgorithm(this.algorithm);
+	    run.setSeeding(this.seeding);
+	    run.setRandomSeed(this.randomSeed + r * RESTART_SEED_STEP);
+	    // 再試行を並列に行う場合は，各再試行の中では並列化しない
+	    run.setParallelism((threads > 1) ? 1 : this.parallelism);
+	    runs[r] = run;
+	}
+
+	int poolSize = Math.max(1, Math.min(threads, restarts));
+	if (poolSize == 1)
+	{
+	    for (KMeansPP run : runs) run.execute(policy);
+	}
+	else
+	{
+	    ForkJoinPool executor = sharedPool(poolSize);
+	    List<Future<?>> futures = new ArrayList<>(restarts);
+	    try
+	    {
+		for (KMeansPP run : runs)
+		    futures.add(executor.submit(() -> run.execute(policy)));
+		for (Future<?> future : futures) future.get();
+	    }
+	    catch (InterruptedException e)
+	    {
+		Thread.currentThread().interrupt();
+		throw new IllegalStateException("k-means restarts interrupted", e);
+	    }
+	    catch (ExecutionException e)
+	    {
+		throw new IllegalStateException("k-means restart failed", e.getCause());
+	    }
+	    finally
+	    {
+		// 共有のプールは止めず，残った再試行だけ取り消す
+		for (Future<?> future : futures) future.cancel(true);
+	    }
+	}
+
+	// 慣性が最小の再試行を採用する
+	this.restartInertias = new double[restarts];
+	int best = 0;
+	for (int r=0; r<restarts; ++r)
+	{
+	    this.restartInertias[r] = runs[r].inertia;
+	    if (runs[r].inertia < runs[best].inertia) best = r;
+	}
+	this.bestRestart = best;
+	this.adopt(runs[best]);
+	return this.iterations;
+    }
+
+    // 別の KMeansPP の計算結果を自分の結果として取り込む
+    private void adopt(KMeansPP other)
+    {
+	this.cxs = other.cxs;
+	this.cys = other.cys;
+	this.labels = other.labels;
+	this.iterations = other.iterations;
+	this.inertia = other.inertia;
+	this.resetMembers();
+    }
+
+    // 乱数の種を設定（execute より前に呼ぶ）
+    public void setRandomSeed(long seed)
+    {
+	this.randomSeed = seed;
+    }
+
+    // 直前の executeRestarts での各再試行の慣性（未実行なら null）
+    public double[] getRestartInertias()
+    {
+	return (this.restartInertias == null) ? null : this.restartInertias.clone();
+    }
+
+    // 直前の executeRestarts で採用した再試行の番号（未実行なら -1）
+    public int getBestRestart()
+    {
+	return this.bestRestart;
+    }
+
+    // ミニバッチ k-means（Sculley, 2010）
+    // 毎回 batchSize 個の点を無作為に選び，その点だけでセントロイドを動かす
+    // セントロイドごとの学習率は 1 / (そのセントロイドに割り当てた点の累計数)
+    // batches 回の更新の後，全ての点を1度だけ割り当ててラベルと慣性を求める
+    // （全ての点を毎回走査しないため，要素数が非常に多い地図で速い）
+    public int executeMiniBatch(int batchSize, int batches)
+    {
+	if (batchSize <= 0)
+	    throw new IllegalArgumentException("batchSize must be positive");
+	this.init();
+
+	int size = this.targets.length;
+	Random random = new Random(this.randomSeed + 1);
+	int[] samples = new int[batchSize];
+	int[] nearest = new int[batchSize];
+	// 各セントロイドにこれまで割り当てた点の数
+	int[] seen = new int[this.n];
+	KDTree2D.Search search = new KDTree2D.Search(1);
+
+	this.iterations = 0;
+	while (this.iterations < batches)
+	{
+	    // 先にバッチ全体の最寄りセントロイドを求めてから更新する
+	    KDTree2D tree = (this.n >= KD_TREE_THRESHOLD) ?
+		new KDTree2D(this.cxs, this.cys) : null;
+	    for (int b=0; b<batchSize; ++b)
+	    {
+		int j = random.nextInt(size);
+		samples[b] = j;
+		nearest[b] = (tree != null) ?
+		    tree.nearest(xs[j], ys[j], search)
+		    : this.nearestCenter(xs[j], ys[j]);
+	    }
+	    for (int b=0; b<batchSize; ++b)
+	    {
+		int j = samples[b];
+		int c = nearest[b];
+		double eta = 1.0 / ++seen[c];
+		this.cxs[c] += eta * (xs[j] - this.cxs[c]);
+		this.cys[c] += eta * (ys[j] - this.cys[c]);
+	    }
+	    ++this.iterations;
+	}
+
+	// 最後に全ての点を割り当てる（セントロイドは動かさない）
+	if (this.parallelism > 1 && this.chunkPartials.length > 1)
+	    this.pool = sharedPool(this.parallelism);
+	try
+	{
+	    this.assign();
+	}
+	finally
+	{
+	    this.pool = null;
+	}
+
+	this.resetMembers();
+	return this.iterations;
+    }
+
+    // parallelism 個のスレッドを持つ共有のプール（最初に使う時に作る）
+    // ワーカーはデーモンスレッドなので，止めなくても JVM の終了を妨げない
+    private static ForkJoinPool sharedPool(int parallelism)
+    {
+	return POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+
+    // (x, y) に最も近いセントロイドの番号（同じ距離なら番号の小さい方）
+    private int nearestCenter(double x, double y)
+    {
+	int best = 0;
+	double bestDist2 = Double.POSITIVE_INFINITY;
+	for (int i=0; i<this.n; ++i)
+	{
+	    double dx = x - this.cxs[i];
+	    double dy = y - this.cys[i];
+	    double dist2 = dx*dx + dy*dy;
+	    if (dist2 < bestDist2)
+	    {
+		bestDist2 = dist2;
+		best = i;
+	    }
+	}
+	return best;
+    }
+
+    // 割当を並列に行うスレッド数を設定（execute より前に呼ぶ）
+    // スレッド数によらず結果は逐次実行と同じになる
+    public void setParallelism(int parallelism)
+    {
+	this.parallelism = parallelism;
+    }
+
+    // 初期セントロイドの選び方を設定（execute より前に呼ぶ）
+    public void setSeeding(Seeding seeding)
+    {
+	this.seeding = seeding;
+    }
+
+    // 反復計算の方式を設定（execute より前に呼ぶ）
+    public void setAlgorithm(Algorithm algorithm)
+    {
+	this.algorithm = algorithm;
+    }
+
+    // 直前の execute で実際に行った反復回数
+    public int getIterations()
+    {
+	return this.iterations;
+    }
+
+    // 最後の割当での慣性（各点と所属セントロイドの二乗距離の和）
+    // 未計算の場合は NaN
+    public double getInertia()
+    {
+	return this.inertia;
+    }
+
+    // 各点の属するクラスタ番号（コンストラクタに渡した targets と同じ順）
+    public int[] getLabels()
+    {
+	checkResultReady();
+	return this.labels.clone();
     }
 
     public int getClusterNumber()
     {
-        return (this.result == null) ? this.n : this.result.length;
+	return (this.cxs == null) ? this.n : this.cxs.length;
     }
 
     public double getClusterX(int i)
     {
 	checkResultReady();
 	checkIndex(i);
-	return this.result[i].getCX();
+	return this.cxs[i];
     }
 
     public double getClusterY(int i)
     {
 	checkResultReady();
 	checkIndex(i);
-	return this.result[i].getCY();
+	return this.cys[i];
     }
 
-    public Collection<EntityID> getClusterMembers(int i)
+    // i 番目のクラスタの要素（読み取り専用のビュー，コピーしない）
+    // 返すリストは RandomAccess なので get(k) で直接取り出せる
+    public List<EntityID> getClusterMembers(int i)
     {
 	checkResultReady();
 	checkIndex(i);
-	return this.result[i].getMembers();
+	this.buildMembers();
+	if (this.memberViews.get(i) == null)
+	    this.memberViews.set(i, new MemberView(
+		this.memberArray, this.memberOffsets[i], this.memberOffsets[i+1]));
+	return this.memberViews.get(i);
     }
 
-    private static Cluster[] init(
-        EntityID[] targets, double[] xs, double[] ys, int n)
+    // i 番目のクラスタの要素数
+    public int getClusterMemberCount(int i)
     {
+	checkResultReady();
+	checkIndex(i);
+	this.buildMembers();
+	return this.memberOffsets[i+1] - this.memberOffsets[i];
+    }
+
+    // i 番目のクラスタの k 番目の要素（ID の昇順）
+    public EntityID getClusterMember(int i, int k)
+    {
+	int size = this.getClusterMemberCount(i);
+	if (k < 0 || k >= size)
+	    throw new IndexOutOfBoundsException("k=" + k + ", size=" + size);
+	return this.memberArray[this.memberOffsets[i] + k];
+    }
+
+    // i 番目のクラスタの要素の ID の値（EntityID.getValue()）の列
+    public IntStream getClusterMemberValues(int i)
+    {
+	checkResultReady();
+	checkIndex(i);
+	this.buildMembers();
+	return IntStream.range(this.memberOffsets[i], this.memberOffsets[i+1])
+	    .map(k -> this.memberArray[k].getValue());
+    }
+
+    // ラベル配列からクラスタの要素を CSR形式で作る（作成済みなら何もしない）
+    // 各クラスタの中では targets の順（ID の昇順）に並ぶ
+    private void buildMembers()
+    {
+	if (this.memberViews != null) return;
+	if (this.memberOffsets == null)
+	{
+	    int[] offsets = new int[this.n+1];
+	    for (int label : this.labels) if (label >= 0) ++offsets[label+1];
+	    for (int i=0; i<this.n; ++i) offsets[i+1] += offsets[i];
+
+	    EntityID[] array = new EntityID[offsets[this.n]];
+	    int[] next = Arrays.copyOf(offsets, this.n);
+	    for (int j=0; j<this.labels.length; ++j)
+	    {
+		int label = this.labels[j];
+		if (label >= 0) array[next[label]++] = this.targets[j];
+	    }
+	    this.memberOffsets = offsets;
+	    this.memberArray = array;
+	}
+	this.memberViews = new ArrayList<>(Collections.nCopies(this.n, null));
+    }
+
+    // 計算結果が変わったときにクラスタの要素を捨てる
+    private void resetMembers()
+    {
+	this.memberOffsets = null;
+	this.memberArray = null;
+	this.memberViews = null;
+    }
+
+    // array[from, to) の読み取り専用ビュー
+    private static class MemberView extends AbstractList<EntityID>
+	implements RandomAccess
+    {
+	private final EntityID[] array;
+	private final int from;
+	private final int to;
+
+	MemberView(EntityID[] array, int from, int to)
+	{
+	    this.array = array;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	@Override
+	public EntityID get(int k)
+	{
+	    if (k < 0 || k >= this.to - this.from)
+		throw new IndexOutOfBoundsException(
+		    "k=" + k + ", size=" + (this.to - this.from));
+	    return this.array[this.from + k];
+	}
+
+	@Override
+	public int size()
+	{
+	    return this.to - this.from;
+	}
+    }
+
+    private void init()
+    {
+	int size = this.targets.length;
 	if (n <= 0) throw new IllegalArgumentException("n must be positive");
-	if (n > targets.length)
+	if (n > size)
 	    throw new IllegalArgumentException("n must be <= number of points");
 
-        Cluster[] ret = new Cluster[n];
-        for (int i=0; i<n; ++i) ret[i] = new Cluster();
+	this.cxs = new double[n];
+	this.cys = new double[n];
+	this.sumxs = new double[n];
+	this.sumys = new double[n];
+	this.counts = new int[n];
+	this.labels = new int[size];
+	Arrays.fill(this.labels, -1);
+	this.shifts = new double[n];
+	this.boundsReady = false;
+	this.chunkPartials = new ChunkPartial[(size + CHUNK - 1) / CHUNK];
+	for (int c=0; c<this.chunkPartials.length; ++c)
+	    this.chunkPartials[c] = new ChunkPartial(n);
+	if (this.algorithm == Algorithm.HAMERLY)
+	{
+	    this.lower = new double[size];
+	    this.halfGaps = new double[n];
+	}
 
-        Random random = new Random(COMMON_SEED);
+	Random random = new Random(this.randomSeed);
+	switch (this.seeding)
+	{
+	case FENWICK:
+	    this.seedFenwick(random);
+	    break;
+	case KMEANS_PARALLEL:
+	    this.seedParallel(random);
+	    break;
+	default:
+	    this.seedExact(random);
+	}
+    }
 
+    // k-means++ の初期セントロイドを選ぶ（D(x)^2 を毎回線形に走査する）
+    private void seedExact(Random random)
+    {
 	// 1.「1つ目」の初期セントロイドは一様ランダムに選ぶ
-        int first = random.nextInt(targets.length);
-        ret[0].addMember(targets[first], xs[first], ys[first]);
-        ret[0].updateCenter();
+	int size = this.targets.length;
+	int first = random.nextInt(size);
+	this.setSeed(0, first);
 
 	// 2. 各点の D(x)^2 = 既選中心までの最小二乗距離 を管理
-	double[] d2 = new double[targets.length];
+	double[] d2 = new double[size];
 	Arrays.fill(d2, Double.POSITIVE_INFINITY);
 
 	// 「1つ目」に基づき d2 を更新
-	for (int j=0; j<targets.length; ++j)
+	for (int j=0; j<size; ++j)
 	{
-	    double dx = xs[j] - ret[0].getCX();
-	    double dy = ys[j] - ret[0].getCY();
+	    double dx = xs[j] - this.cxs[0];
+	    double dy = ys[j] - this.cys[0];
 	    double dist2 = dx*dx + dy*dy;
 	    d2[j] = Math.min(d2[j], dist2);
 	}
@@ -117,25 +618,24 @@ public class KMeansPP
 	    int nextIndex;
 	    if (sum == 0.0)
 	    {
-		nextIndex = random.nextInt(targets.length);
+		nextIndex = random.nextInt(size);
 	    } else {
 		double r = random.nextDouble() * sum; // D(x)^2に比例した確率
 		double acc = 0.0;
 		nextIndex = 0;
-		for (int j=0; j<targets.length; ++j)
+		for (int j=0; j<size; ++j)
 	        {
 		    acc += d2[j];
 		    if (acc >= r) { nextIndex = j; break; }
 		}
 	    }
 
-	    ret[i].addMember(targets[nextIndex], xs[nextIndex], ys[nextIndex]);
-	    ret[i].updateCenter();
+	    this.setSeed(i, nextIndex);
 
 	    // 新しいセントロイドでd2を更新(最小二乗距離)
-	    double cx = ret[i].getCX();
-	    double cy = ret[i].getCY();
-	    for (int j=0; j<targets.length; ++j)
+	    double cx = this.cxs[i];
+	    double cy = this.cys[i];
+	    for (int j=0; j<size; ++j)
 	    {
 		double dx = xs[j] - cx;
 		double dy = ys[j] - cy;
@@ -143,81 +643,552 @@ public class KMeansPP
 		d2[j] = Math.min(d2[j], dist2);
 	    }
 	}
+    }
+
+    // k-means++ の初期セントロイドを選ぶ（Fenwick木による抽選）
+    // D(x)^2 の累積和を Fenwick木で持ち，O(log N) で抽選する
+    // 各点は最寄りのセントロイドごとのリストに入れておき，
+    // 三角不等式から新しいセントロイドの方が近くなりえないリスト
+    // （セントロイド間の距離が リスト内の最大の D(x) の2倍以上）は丸ごと飛ばす
+    private void seedFenwick(Random random)
+    {
+	int size = this.targets.length;
+	int first = random.nextInt(size);
+	this.setSeed(0, first);
+
+	double[] d2 = new double[size];
+	int[][] lists = new int[n][];
+	int[] listSizes = new int[n];
+	double[] radius2 = new double[n];
+	lists[0] = new int[size];
+	for (int j=0; j<size; ++j)
+	{
+	    double dx = xs[j] - this.cxs[0];
+	    double dy = ys[j] - this.cys[0];
+	    d2[j] = dx*dx + dy*dy;
+	    lists[0][j] = j;
+	    radius2[0] = Math.max(radius2[0], d2[j]);
+	}
+	listSizes[0] = size;
+	Fenwick tree = new Fenwick(d2);
+
+	int[] moved = new int[size];
+	for (int i=1; i<n; ++i)
+	{
+	    double sum = tree.total();
+	    int nextIndex = (sum <= 0.0) ?
+		random.nextInt(size) : tree.search(random.nextDouble() * sum);
+	    this.setSeed(i, nextIndex);
 
-	return ret;
+	    double cx = this.cxs[i];
+	    double cy = this.cys[i];
+	    int nMoved = 0;
+	    double movedRadius2 = 0.0;
+	    for (int c=0; c<i; ++c)
+	    {
+		double gx = this.cxs[c] - cx;
+		double gy = this.cys[c] - cy;
+		double gap2 = gx*gx + gy*gy;
+		if (gap2 >= 4.0 * radius2[c]) continue;
+
+		// リスト c を走査し，新しいセントロイドの方が近い点を移す
+		int[] list = lists[c];
+		int keep = 0;
+		double r2 = 0.0;
+		for (int k=0; k<listSizes[c]; ++k)
+		{
+		    int j = list[k];
+		    double dx = xs[j] - cx;
+		    double dy = ys[j] - cy;
+		    double dist2 = dx*dx + dy*dy;
+		    if (dist2 < d2[j])
+		    {
+			tree.add(j, dist2 - d2[j]);
+			d2[j] = dist2;
+			moved[nMoved++] = j;
+			movedRadius2 = Math.max(movedRadius2, dist2);
+		    } else {
+			list[keep++] = j;
+			r2 = Math.max(r2, d2[j]);
+		    }
+		}
+		listSizes[c] = keep;
+		radius2[c] = r2;
+	    }
+	    lists[i] = Arrays.copyOf(moved, nMoved);
+	    listSizes[i] = nMoved;
+	    radius2[i] = movedRadius2;
+	}
     }
 
-    private static void assign(
-        Cluster[] clusters, EntityID id, double x, double y)
+    // k-means|| による初期セントロイドの選択
+    // D(x)^2 に比例した確率で数ラウンドだけ多めに候補を選び，
+    // 候補ごとに最寄りの点の数で重み付けした k-means++ で n 個に絞る
+    private void seedParallel(Random random)
     {
-        Optional<Cluster> cluster = Arrays.stream(clusters)
-            .min(comparing(c -> {
-                double cx = c.getCX();
-                double cy = c.getCY();
-                return Math.hypot(cx-x, cy-y);
-            }));
+	int size = this.targets.length;
+	double oversampling = 2.0 * n;
+
+	int[] candidates = new int[size];
+	int count = 0;
+	double[] d2 = new double[size];
+	int[] nearest = new int[size];
+	Arrays.fill(d2, Double.POSITIVE_INFINITY);
+
+	candidates[count++] = random.nextInt(size);
+	count = this.addCandidates(candidates, 0, count, d2, nearest);
+
+	for (int round=0; round<PARALLEL_SEEDING_ROUNDS; ++round)
+	{
+	    double phi = 0.0;
+	    for (double v : d2) phi += v;
+	    if (phi == 0.0) break;
 
-        cluster.get().addMember(id, x, y);
+	    int from = count;
+	    for (int j=0; j<size; ++j)
+		if (d2[j] > 0.0 && random.nextDouble() * phi < oversampling * d2[j])
+		    candidates[count++] = j;
+	    count = this.addCandidates(candidates, from, count, d2, nearest);
+	}
+
+	// 候補が足りない場合は最も遠い点を補う
+	// 全ての点が候補と重なっている（異なる座標が n 個より少ない）場合は，
+	// seedExact と同じく候補でない点から一様ランダムに選ぶ
+	boolean[] chosen = null;
+	while (count < n)
+	{
+	    int farthest = 0;
+	    for (int j=1; j<size; ++j) if (d2[j] > d2[farthest]) farthest = j;
+	    if (d2[farthest] > 0.0)
+	    {
+		candidates[count++] = farthest;
+		count = this.addCandidates(candidates, count-1, count, d2, nearest);
+		continue;
+	    }
+	    if (chosen == null)
+	    {
+		chosen = new boolean[size];
+		for (int c=0; c<count; ++c) chosen[candidates[c]] = true;
+	    }
+	    int j = random.nextInt(size);
+	    while (chosen[j]) j = random.nextInt(size);
+	    chosen[j] = true;
+	    candidates[count++] = j;
+	}
+
+	// 候補の重み = その候補が最寄りである点の数
+	double[] weights = new double[count];
+	for (int j=0; j<size; ++j) weights[nearest[j]] += 1.0;
+
+	// 重み付き k-means++ で候補から n 個を選ぶ
+	double[] cd2 = new double[count];
+	Arrays.fill(cd2, Double.POSITIVE_INFINITY);
+	int next = sampleWeighted(random, weights, null, count);
+	for (int i=0; i<n; ++i)
+	{
+	    if (i > 0) next = sampleWeighted(random, weights, cd2, count);
+	    int j = candidates[next];
+	    this.setSeed(i, j);
+	    for (int c=0; c<count; ++c)
+	    {
+		double dx = xs[candidates[c]] - xs[j];
+		double dy = ys[candidates[c]] - ys[j];
+		cd2[c] = Math.min(cd2[c], dx*dx + dy*dy);
+	    }
+	}
     }
 
-    private static class Cluster
+    // candidates[from, to) を候補に加え，各点の D(x)^2 と最寄りの候補を更新
+    // 既に候補である点は重複させずに取り除き，新しい候補数を返す
+    private int addCandidates(
+	int[] candidates, int from, int to, double[] d2, int[] nearest)
     {
-        private double cx = 0.0;
-        private double cy = 0.0;
+	int count = from;
+	for (int k=from; k<to; ++k)
+	{
+	    int c = candidates[k];
+	    if (d2[c] == 0.0) continue;
+	    candidates[count] = c;
+	    double cx = xs[c];
+	    double cy = ys[c];
+	    for (int j=0; j<this.targets.length; ++j)
+	    {
+		double dx = xs[j] - cx;
+		double dy = ys[j] - cy;
+		double dist2 = dx*dx + dy*dy;
+		if (dist2 < d2[j])
+		{
+		    d2[j] = dist2;
+		    nearest[j] = count;
+		}
+	    }
+	    ++count;
+	}
+	return count;
+    }
 
-        private Collection<EntityID> members = new LinkedList<>();
+    // weights[c] * d2[c]（d2 が null なら weights[c]）に比例した確率で c を選ぶ
+    private static int sampleWeighted(
+	Random random, double[] weights, double[] d2, int count)
+    {
+	double sum = 0.0;
+	for (int c=0; c<count; ++c)
+	    sum += weights[c] * ((d2 == null) ? 1.0 : d2[c]);
+	if (sum == 0.0) return random.nextInt(count);
 
-        private double sumx = 0.0;
-        private double sumy = 0.0;
+	double r = random.nextDouble() * sum;
+	double acc = 0.0;
+	for (int c=0; c<count; ++c)
+	{
+	    acc += weights[c] * ((d2 == null) ? 1.0 : d2[c]);
+	    if (acc >= r) return c;
+	}
+	return count - 1;
+    }
 
-        public Cluster() {}
+    // D(x)^2 の累積和を持つ Fenwick木
+    private static class Fenwick
+    {
+	private final double[] tree;
+	private final int size;
+	private final int highBit;
 
-        public Cluster(Collection<EntityID> members)
-        {
-	    this.members = (members == null) ? new LinkedList<>() : new LinkedList<>(members);
-        }
+	Fenwick(double[] values)
+	{
+	    this.size = values.length;
+	    this.tree = new double[this.size + 1];
+	    for (int i=1; i<=this.size; ++i)
+	    {
+		this.tree[i] += values[i-1];
+		int parent = i + (i & -i);
+		if (parent <= this.size) this.tree[parent] += this.tree[i];
+	    }
+	    this.highBit = Integer.highestOneBit(Math.max(1, this.size));
+	}
 
-        public void addMember(EntityID id, double x, double y)
-        {
-            this.members.add(id);
-            this.sumx += x;
-            this.sumy += y;
-        }
+	void add(int i, double delta)
+	{
+	    for (int k=i+1; k<=this.size; k+=(k & -k)) this.tree[k] += delta;
+	}
 
-        public Collection<EntityID> getMembers()
-        {
-            return new ArrayList<>(this.members);
-        }
+	double total()
+	{
+	    double sum = 0.0;
+	    for (int k=this.size; k>0; k-=(k & -k)) sum += this.tree[k];
+	    return sum;
+	}
 
-        public void clearMembers()
-        {
-            this.members.clear();
-            this.sumx = 0.0;
-            this.sumy = 0.0;
-        }
+	// 累積和が r 以上になる最初の添字
+	int search(double r)
+	{
+	    int pos = 0;
+	    for (int step=this.highBit; step>0; step>>=1)
+	    {
+		int next = pos + step;
+		if (next <= this.size && this.tree[next] < r)
+		{
+		    pos = next;
+		    r -= this.tree[next];
+		}
+	    }
+	    return Math.min(pos, this.size - 1);
+	}
+    }
 
-        public void updateCenter()
-        {
-            if (this.members.isEmpty()) return;
+    // j 番目の点を i 番目の初期セントロイドにする
+    private void setSeed(int i, int j)
+    {
+	this.cxs[i] = this.xs[j];
+	this.cys[i] = this.ys[j];
+	this.labels[j] = i;
+    }
 
-            this.cx = this.sumx / this.members.size();
-            this.cy = this.sumy / this.members.size();
-        }
+    // 各点を最も近いセントロイドのクラスタに割り当て，座標の和を集計
+    // ラベルが変わった点の数を返す
+    //
+    // 点は CHUNK 個ずつのまとまりに分けて処理し，まとまりごとの部分和を
+    // まとまりの番号順に足し合わせる
+    // 並列に処理しても足し合わせる順序は同じなので，
+    // 逐次実行とビット単位で同じ結果になる
+    private int assign()
+    {
+	if (this.algorithm == Algorithm.HAMERLY) this.prepareHamerly();
+	else if (this.n >= KD_TREE_THRESHOLD)
+	    this.centerTree = new KDTree2D(this.cxs, this.cys);
 
-        public double getCX()
-        {
-            return this.cx;
-        }
+	int chunks = this.chunkPartials.length;
+	if (this.pool == null || chunks == 1)
+	    for (int c=0; c<chunks; ++c) this.assignChunk(c);
+	else
+	    this.pool.invoke(new ChunkTask(this, 0, chunks));
 
-        public double getCY()
-        {
-            return this.cy;
-        }
+	// まとまりの番号順に部分和を足し合わせる
+	Arrays.fill(this.sumxs, 0.0);
+	Arrays.fill(this.sumys, 0.0);
+	Arrays.fill(this.counts, 0);
+	int changed = 0;
+	double inertia = 0.0;
+	for (ChunkPartial partial : this.chunkPartials)
+	{
+	    for (int i=0; i<this.n; ++i)
+	    {
+		this.sumxs[i] += partial.sumxs[i];
+		this.sumys[i] += partial.sumys[i];
+		this.counts[i] += partial.counts[i];
+	    }
+	    changed += partial.changed;
+	    inertia += partial.inertia;
+	}
+	this.boundsReady = true;
+	this.centerTree = null;
+	this.inertia = inertia;
+	return changed;
+    }
+
+    // c 番目のまとまりの点を割り当て，部分和を集計
+    private void assignChunk(int c)
+    {
+	ChunkPartial partial = this.chunkPartials[c];
+	Arrays.fill(partial.sumxs, 0.0);
+	Arrays.fill(partial.sumys, 0.0);
+	Arrays.fill(partial.counts, 0);
+	partial.changed = 0;
+	partial.inertia = 0.0;
+
+	int from = c * CHUNK;
+	int to = Math.min(from + CHUNK, this.targets.length);
+	if (this.algorithm == Algorithm.HAMERLY)
+	    this.assignHamerly(partial, from, to);
+	else
+	    this.assignLloyd(partial, from, to);
+    }
+
+    // 距離は二乗のまま比較する（同距離なら番号の小さいクラスタ）
+    private void assignLloyd(ChunkPartial partial, int from, int to)
+    {
+	double[] cxs = this.cxs;
+	double[] cys = this.cys;
+	KDTree2D tree = this.centerTree;
+
+	for (int j=from; j<to; ++j)
+	{
+	    double x = this.xs[j];
+	    double y = this.ys[j];
+	    int best = 0;
+	    double bestD2 = Double.POSITIVE_INFINITY;
+	    if (tree != null)
+	    {
+		// 全てを走査した場合と同じセントロイドが返る
+		best = tree.nearest(x, y, partial.search);
+		double dx = cxs[best] - x;
+		double dy = cys[best] - y;
+		bestD2 = dx*dx + dy*dy;
+	    }
+	    else
+	    {
+		for (int i=0; i<this.n; ++i)
+		{
+		    double dx = cxs[i] - x;
+		    double dy = cys[i] - y;
+		    double d2 = dx*dx + dy*dy;
+		    if (d2 < bestD2)
+		    {
+			bestD2 = d2;
+			best = i;
+		    }
+		}
+	    }
+	    if (this.labels[j] != best) partial.changed++;
+	    this.labels[j] = best;
+	    partial.add(best, x, y, bestD2);
+	}
+    }
+
+    // Hamerly 法で全ての点に共通の値（セントロイド間の距離と移動量）を求める
+    private void prepareHamerly()
+    {
+	double[] cxs = this.cxs;
+	double[] cys = this.cys;
+
+	// セントロイド間の距離の半分（下に丸める）
+	for (int i=0; i<this.n; ++i)
+	{
+	    double min2 = Double.POSITIVE_INFINITY;
+	    for (int c=0; c<this.n; ++c)
+	    {
+		if (c == i) continue;
+		double dx = cxs[i] - cxs[c];
+		double dy = cys[i] - cys[c];
+		min2 = Math.min(min2, dx*dx + dy*dy);
+	    }
+	    this.halfGaps[i] = 0.5 * Math.sqrt(min2) * (1.0 - BOUND_MARGIN);
+	}
+
+	// 直前の更新での最大移動量と2番目の移動量
+	this.maxShiftIndex = -1;
+	this.maxShift = 0.0;
+	this.secondShift = 0.0;
+	for (int i=0; i<this.n; ++i)
+	{
+	    if (this.shifts[i] > this.maxShift)
+	    {
+		this.secondShift = this.maxShift;
+		this.maxShift = this.shifts[i];
+		this.maxShiftIndex = i;
+	    }
+	    else if (this.shifts[i] > this.secondShift)
+	    {
+		this.secondShift = this.shifts[i];
+	    }
+	}
+    }
+
+    // Hamerly 法による割当
+    // 所属セントロイドまでの距離が「2番目に近いセントロイドまでの距離の下界」と
+    // 「最も近い他のセントロイドまでの距離の半分」のどちらかより真に小さければ，
+    // その点のラベルは変わりえないため他のセントロイドとの距離計算を省く
+    // それ以外の点は LLOYD と同じ全探索を行うので，結果は LLOYD と一致する
+    private void assignHamerly(ChunkPartial partial, int from, int to)
+    {
+	double[] cxs = this.cxs;
+	double[] cys = this.cys;
+
+	for (int j=from; j<to; ++j)
+	{
+	    double x = this.xs[j];
+	    double y = this.ys[j];
+	    int a = this.labels[j];
+
+	    if (this.boundsReady)
+	    {
+		// セントロイドの移動に合わせて下界を下げる
+		double lower = this.lower[j] -
+		    ((a == this.maxShiftIndex) ? this.secondShift : this.maxShift);
+		this.lower[j] = lower;
+
+		double dx = cxs[a] - x;
+		double dy = cys[a] - y;
+		double d2 = dx*dx + dy*dy;
+		double bound = Math.max(this.halfGaps[a], lower);
+		if (Math.sqrt(d2) * (1.0 + BOUND_MARGIN) < bound)
+		{
+		    partial.add(a, x, y, d2);
+		    continue;
+		}
+	    }
+
+	    // 全てのセントロイドとの距離を計算（LLOYD と同じ比較順）
+	    int best = 0;
+	    double bestD2 = Double.POSITIVE_INFINITY;
+	    double secondD2 = Double.POSITIVE_INFINITY;
+	    for (int i=0; i<this.n; ++i)
+	    {
+		double dx = cxs[i] - x;
+		double dy = cys[i] - y;
+		double d2 = dx*dx + dy*dy;
+		if (d2 < bestD2)
+		{
+		    secondD2 = bestD2;
+		    bestD2 = d2;
+		    best = i;
+		}
+		else if (d2 < secondD2)
+		{
+		    secondD2 = d2;
+		}
+	    }
+	    this.lower[j] = Math.sqrt(secondD2) * (1.0 - BOUND_MARGIN);
+
+	    if (a != best) partial.changed++;
+	    this.labels[j] = best;
+	    partial.add(best, x, y, bestD2);
+	}
+    }
+
+    // まとまりごとの部分和
+    private static class ChunkPartial
+    {
+	final double[] sumxs;
+	final double[] sumys;
+	final int[] counts;
+	int changed;
+	double inertia;
+	// KD木の探索の作業領域（まとまりごとに1つ持ち，並列に処理しても共有しない）
+	final KDTree2D.Search search = new KDTree2D.Search(1);
+
+	ChunkPartial(int n)
+	{
+	    this.sumxs = new double[n];
+	    this.sumys = new double[n];
+	    this.counts = new int[n];
+	}
+
+	void add(int i, double x, double y, double d2)
+	{
+	    this.sumxs[i] += x;
+	    this.sumys[i] += y;
+	    this.counts[i]++;
+	    this.inertia += d2;
+	}
+    }
+
+    // まとまりの範囲 [from, to) を分割して並列に割り当てるタスク
+    private static class ChunkTask extends RecursiveAction
+    {
+	private static final long serialVersionUID = 1L;
+
+	private final KMeansPP owner;
+	private final int from;
+	private final int to;
+
+	ChunkTask(KMeansPP owner, int from, int to)
+	{
+	    this.owner = owner;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	@Override
+	protected void compute()
+	{
+	    if (this.to - this.from == 1)
+	    {
+		this.owner.assignChunk(this.from);
+		return;
+	    }
+	    int mid = (this.from + this.to) >>> 1;
+	    invokeAll(
+		new ChunkTask(this.owner, this.from, mid),
+		new ChunkTask(this.owner, mid, this.to));
+	}
+    }
+
+    // 集計した座標の和からセントロイドを更新（空のクラスタは据え置き）
+    // セントロイドの最大移動量を返す
+    private double updateCenters()
+    {
+	double shift2 = 0.0;
+	Arrays.fill(this.shifts, 0.0);
+	for (int i=0; i<this.n; ++i)
+	{
+	    if (this.counts[i] == 0) continue;
+	    double cx = this.sumxs[i] / this.counts[i];
+	    double cy = this.sumys[i] / this.counts[i];
+	    double dx = cx - this.cxs[i];
+	    double dy = cy - this.cys[i];
+	    double d2 = dx*dx + dy*dy;
+	    shift2 = Math.max(shift2, d2);
+	    // 下界の更新用に上に丸めて保持
+	    this.shifts[i] = Math.sqrt(d2) * (1.0 + BOUND_MARGIN);
+	    this.cxs[i] = cx;
+	    this.cys[i] = cy;
+	}
+	return Math.sqrt(shift2);
     }
 
     private void checkResultReady()
     {
-	if (this.result == null)
+	if (this.cxs == null)
 	{
 	    throw new IllegalStateException("KMeans++ has not been executed yet.");
 	}
@@ -225,7 +1196,7 @@ public class KMeansPP
 
     private void checkIndex(int i)
     {
-	if (i < 0 || i >= this.result.length)
+	if (i < 0 || i >= this.cxs.length)
 	{
 	    throw new IndexOutOfBoundsException("Invalid cluster index: " + i);
 	}
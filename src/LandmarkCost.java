@@ -0,0 +1,261 @@
+package MyTeam.module.algorithm;
+
+import rescuecore2.standard.entities.Human;
+import java.util.Arrays;
+
+// 道路網（RoadGraph）上の移動距離をコストにする
+//
+// 互いに遠いいくつかの頂点（ランドマーク）から全ての頂点への最短距離を
+// 最初に求めておき，三角不等式による下界 max_L |d(L,s) - d(L,t)|（ALT）で
+// 全ての組の距離を見積もる
+// 近い候補（割当で選ばれうるクラスタ）だけは同じ下界を使う A* で正確な距離を求める
+// 下界の小さい順に A* を行い，正確な距離の exactCandidates 番目より
+// 次の下界が小さくなくなったら打ち切る（これで本当に近い exactCandidates 個は
+// 必ず正確な距離になる）
+// 残りの候補は下界を exactCandidates 番目の正確な距離で切り上げて使う
+// （残りの本当の距離はどれもそれ以上なので，これも下界になる）
+// こうしないと遠い候補ほど小さく見積もられ，割当が遠いクラスタに偏る
+// 1行あたりの計算は O(クラスタ数 × ランドマーク数) と近い候補の A* で済む
+//
+// 道路網でつながっていない組は，直線距離を UNREACHABLE_FACTOR 倍して使う
+// （RoadKMedoidsClustering と同じ扱い）
+public class LandmarkCost implements CostProvider
+{
+    // 道路網で到達できない組の距離は，直線距離をこの倍率で割り増して使う
+    private static final int UNREACHABLE_FACTOR = 4;
+
+    private final RoadGraph graph;
+    // ランドマークの数（頂点が少ない場合は指定より少なくなる）
+    private final int landmarks;
+    // table[v * landmarks + l] = l番目のランドマークから頂点 v までの距離
+    // （1つの頂点の値が連続するように並べる）
+    private final int[] table;
+    // 座標から最寄りの頂点を探すための KD木とその作業領域
+    private final KDTree2D tree;
+    private final KDTree2D.Search search = new KDTree2D.Search(1);
+
+    // クラスタの中心座標と，その最寄りの頂点
+    private double[] cxs;
+    private double[] cys;
+    private int[] centreVertices;
+
+    // costs の作業領域（上位32bit = 下界，下位32bit = 候補の番号）
+    private long[] keys = new long[0];
+    // これまでの正確な距離の小さい方から exactCandidates 個（costs の作業領域）
+    private final int[] nearestExact;
+
+    public LandmarkCost(RoadGraph graph, int landmarks, int exactCandidates)
+    {
+        this.graph = graph;
+        this.nearestExact = new int[Math.max(0, exactCandidates)];
+
+        int size = graph.size();
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        for (int v=0; v<size; ++v)
+        {
+            xs[v] = graph.getX(v);
+            ys[v] = graph.getY(v);
+        }
+        this.tree = new KDTree2D(xs, ys);
+
+        int[] chosen = selectLandmarks(graph, Math.max(0, landmarks));
+        this.landmarks = chosen.length;
+        this.table = new int[size * this.landmarks];
+        for (int l=0; l<this.landmarks; ++l)
+        {
+            int[] dist = graph.distancesFrom(chosen[l]);
+            for (int v=0; v<size; ++v) this.table[v * this.landmarks + l] = dist[v];
+        }
+    }
+
+    @Override
+    public void setCentres(double[] cxs, double[] cys)
+    {
+        this.cxs = cxs;
+        this.cys = cys;
+        this.centreVertices = new int[cxs.length];
+        for (int col=0; col<cxs.length; ++col)
+            this.centreVertices[col] =
+                this.tree.nearest(cxs[col], cys[col], this.search);
+    }
+
+    @Override
+    public void costs(Human agent, int[] cols, int count, int[] ret)
+    {
+        int s = this.vertexOf(agent);
+        if (this.keys.length < count) this.keys = new long[count];
+
+        // 全ての候補の下界（到達できなければ UNREACHABLE）
+        for (int k=0; k<count; ++k)
+        {
+            int t = this.centreVertices[cols[k]];
+            int bound = (s < 0 || t < 0) ? RoadGraph.UNREACHABLE : this.bound(s, t);
+            ret[k] = bound;
+            this.keys[k] = ((long)bound << 32) | k;
+        }
+
+        // 下界の小さい候補から正確な距離に置き換える
+        Arrays.sort(this.keys, 0, count);
+        int found = 0;
+        int e = 0;
+        for (; e<count; ++e)
+        {
+            int k = (int)this.keys[e];
+            if (ret[k] == RoadGraph.UNREACHABLE) break;
+            // exactCandidates 番目の正確な距離より遠い候補しか残っていない
+            if (found == this.nearestExact.length
+                && (found == 0 || ret[k] >= this.nearestExact[found - 1]))
+                break;
+            int t = this.centreVertices[cols[k]];
+            ret[k] = this.graph.distance(s, t, v -> this.bound(v, t));
+            if (ret[k] != RoadGraph.UNREACHABLE)
+                found = this.insertExact(ret[k], found);
+        }
+
+        // 残りの候補の下界を切り上げる
+        if (found > 0)
+        {
+            int floor = this.nearestExact[found - 1];
+            for (; e<count; ++e)
+            {
+                int k = (int)this.keys[e];
+                if (ret[k] != RoadGraph.UNREACHABLE) ret[k] = Math.max(ret[k], floor);
+            }
+        }
+
+        for (int k=0; k<count; ++k)
+        {
+            if (ret[k] != RoadGraph.UNREACHABLE) continue;
+            int col = cols[k];
+            double d = Math.hypot(this.cxs[col] - agent.getX(),
+                                  this.cys[col] - agent.getY());
+            ret[k] = (int)Math.min(Integer.MAX_VALUE - 1, UNREACHABLE_FACTOR * d);
+        }
+    }
+
+    // 正確な距離 d を nearestExact[0..found)（昇順，最大 exactCandidates 個）に
+    // 入れ，新しい個数を返す
+    private int insertExact(int d, int found)
+    {
+        int[] list = this.nearestExact;
+        if (found == list.length)
+        {
+            if (found == 0 || d >= list[found - 1]) return found;
+            --found;
+        }
+        int i = found;
+        while (i > 0 && list[i - 1] > d)
+        {
+            list[i] = list[i - 1];
+            --i;
+        }
+        list[i] = d;
+        return found + 1;
+    }
+
+    // 頂点 s から t への距離の下界（つながっていないことが分かれば UNREACHABLE）
+    private int bound(int s, int t)
+    {
+        int ret = 0;
+        int bs = s * this.landmarks;
+        int bt = t * this.landmarks;
+        for (int l=0; l<this.landmarks; ++l)
+        {
+            int ds = this.table[bs + l];
+            int dt = this.table[bt + l];
+            if (ds == RoadGraph.UNREACHABLE || dt == RoadGraph.UNREACHABLE)
+            {
+                // 片方だけ届くなら s と t は別の連結成分にある
+                if (ds != dt) return RoadGraph.UNREACHABLE;
+                continue;
+            }
+            ret = Math.max(ret, Math.abs(ds - dt));
+        }
+        return ret;
+    }
+
+    // エージェントのいる頂点（位置が分からなければ座標の最寄りの頂点）
+    private int vertexOf(Human agent)
+    {
+        if (agent.isPositionDefined())
+        {
+            int v = this.graph.indexOf(agent.getPosition());
+            if (v >= 0) return v;
+        }
+        return this.tree.nearest(agent.getX(), agent.getY(), this.search);
+    }
+
+    // 最遠点法でランドマークを選ぶ
+    // ランドマークは自分の連結成分の中でしか下界を与えないため，まず頂点が2つ以上の
+    // 連結成分に大きい順に1つずつ置く（成分の最初の頂点から最も遠い頂点）
+    // 以降は選んだランドマークのどれからも最も遠い頂点を選ぶ
+    // （距離の同じ頂点は番号の小さい方）
+    private static int[] selectLandmarks(RoadGraph graph, int count)
+    {
+        int size = graph.size();
+        if (size == 0 || count == 0) return new int[0];
+
+        // 連結成分の番号（component[v]）と，成分の最初の頂点からの距離（reach[v]）
+        int[] reach = new int[size];
+        int[] component = new int[size];
+        Arrays.fill(reach, RoadGraph.UNREACHABLE);
+        Arrays.fill(component, -1);
+        int components = 0;
+        for (int v=0; v<size; ++v)
+            if (component[v] < 0) graph.relax(v, components++, reach, component);
+
+        // 各成分の頂点数と，最初の頂点から最も遠い頂点
+        int[] members = new int[components];
+        int[] far = new int[components];
+        Arrays.fill(far, -1);
+        for (int v=0; v<size; ++v)
+        {
+            int c = component[v];
+            ++members[c];
+            if (far[c] < 0 || reach[v] > reach[far[c]]) far[c] = v;
+        }
+        Integer[] order = new Integer[components];
+        for (int c=0; c<components; ++c) order[c] = c;
+        Arrays.sort(order, (a, b) -> (members[a] != members[b]) ?
+                    Integer.compare(members[b], members[a]) : Integer.compare(a, b));
+
+        int[] chosen = new int[count];
+        int[] dist = new int[size];
+        int[] owner = new int[size];
+        Arrays.fill(dist, RoadGraph.UNREACHABLE);
+        Arrays.fill(owner, -1);
+        int found = 0;
+        for (int k=0; k<components && found<count; ++k)
+        {
+            int c = order[k];
+            // 頂点が1つの成分には下界が要らない
+            if (members[c] < 2) break;
+            chosen[found] = far[c];
+            graph.relax(far[c], found, dist, owner);
+            ++found;
+        }
+        while (found < count)
+        {
+            int next = farthest(dist);
+            // 残りの頂点が全てランドマークになった
+            if (dist[next] == 0 || dist[next] == RoadGraph.UNREACHABLE) break;
+            chosen[found] = next;
+            graph.relax(next, found, dist, owner);
+            ++found;
+        }
+        return Arrays.copyOf(chosen, found);
+    }
+
+    // 到達できる頂点のうち dist が最大のもの
+    private static int farthest(int[] dist)
+    {
+        int ret = 0;
+        for (int v=1; v<dist.length; ++v)
+        {
+            if (dist[v] == RoadGraph.UNREACHABLE) continue;
+            if (dist[ret] == RoadGraph.UNREACHABLE || dist[v] > dist[ret]) ret = v;
+        }
+        return ret;
+    }
+}
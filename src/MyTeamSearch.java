@@ -5,12 +5,26 @@ import adf.core.component.module.complex.Search;
 import adf.core.component.module.algorithm.Clustering;
 import adf.core.agent.module.ModuleManager;
 import adf.core.agent.develop.DevelopData;
+import adf.core.agent.communication.MessageManager;
+import MyTeam.module.algorithm.IntIntMap;
+import MyTeam.module.algorithm.IntSet;
+import MyTeam.module.algorithm.TourProvider;
+import MyTeam.module.algorithm.VantagePointCover;
 import rescuecore2.standard.entities.*;
 import rescuecore2.worldmodel.EntityID;
 import java.util.*;
+import static rescuecore2.standard.entities.StandardEntityURN.*;
+import static java.util.Comparator.*;
 
 public class MyTeamSearch extends Search {
 
+    // 探索対象の選び方
+    // RANDOM:   担当クラスタからランダムに選ぶ
+    // COVERAGE: 未探索の建物を，近さと最後に見えてからの時間で選ぶ
+    // TOUR:     クラスタリングが持つ担当クラスタの巡回順（TourProvider）をたどる
+    // VANTAGE:  担当クラスタの建物を見渡せる見晴らし点（VantagePointCover）をたどる
+    public enum Mode { RANDOM, COVERAGE, TOUR, VANTAGE }
+
     // クラスタリング器
     private Clustering clustering;
     // calc()で決定した探索対象(1件)．getTarget()で返す値
@@ -18,6 +32,98 @@ public class MyTeamSearch extends Search {
     // 固定シード（1）の擬似乱数
     // （毎回同じ乱数列が生成され，結果が再現可能）
     private Random random = new Random(1);
+    // これまでに自分が立ち寄った場所（EntityID の値）
+    // 探索対象を持ち続けるかの判定と TOUR/VANTAGE で使う
+    // （RANDOM の候補選びは従来どおり立ち寄り済みかを問わない）
+    private final IntSet visited = new IntSet();
+    // 探索対象の選び方（module.cfg で切替）
+    private final Mode mode;
+    // result を選んだ時刻
+    private int targetSince;
+    // 同じ探索対象を持ち続ける最大のステップ数（0 なら制限なし）
+    private final int targetTimeout;
+
+    // 担当クラスタの要素（添字で取り出せるリスト）
+    // クラスタ番号と要素数が変わらない間は作り直さない
+    private List<EntityID> candidates = Collections.emptyList();
+    private int candidateCluster = -1;
+
+    // --- TOUR/VANTAGE 用 ---
+
+    // 見晴らし点を求めるモジュール（VANTAGE の場合のみ）
+    private VantagePointCover vantage;
+    // 担当クラスタの巡回順（TOUR では建物，VANTAGE では見晴らし点）
+    // （TOUR でクラスタリングが TourProvider でなければ空）
+    private List<EntityID> tour = Collections.emptyList();
+    // 巡回順の次に選ぶ位置
+    private int tourIndex = 0;
+
+    // --- COVERAGE 用 ---
+
+    // 建物の ID（昇順）と座標．この添字を建物の通し番号として使う
+    private EntityID[] buildingIDs;
+    private int[] buildingXs;
+    private int[] buildingYs;
+    // 建物の ID の値 → 通し番号
+    private IntIntMap ordinals;
+    // 探索済みの建物（通し番号のビット）
+    private final BitSet explored = new BitSet();
+    // 各建物が最後に見えた時刻（一度も見えていなければ -1）
+    private int[] lastSeen;
+    // 候補の優先度キュー（探索済みの建物や古い版の候補は取り出す時に捨てる）
+    private final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+    // 各建物の最新の候補の版
+    private int[] versions;
+    // キューの対象（担当クラスタに含まれる建物）
+    private final BitSet queued = new BitSet();
+    // キューを作り直したときの自分の位置
+    // キューのキーはこの位置からの距離で計算する
+    private double queueX;
+    private double queueY;
+    // calc() で取り出した候補を戻すための作業領域
+    private final List<Candidate> scanned = new ArrayList<>();
+    // この距離以内で見えた建物は探索済みとみなす
+    private final int exploreRange;
+    // 最後に見えてから1ステップ経つごとに，距離何 mm 分だけ優先するか
+    private final int ageWeight;
+
+    // 自分の位置がキューを作った位置からこれ以上離れたらキューを作り直す
+    // （離れるほど calc() で確かめる候補が増えるため）
+    private static final double REBUILD_DISTANCE = 50000.0;
+    // 燃え尽きた建物の fieryness
+    private static final int FIERYNESS_BURNT_OUT = 8;
+    // 完全に倒壊した建物の brokenness
+    private static final int BROKENNESS_COLLAPSED = 100;
+
+    // module.cfg の設定キー
+    private static final String KEY_MODE = "MyTeamSearch.Mode";
+    private static final String KEY_EXPLORE_RANGE = "MyTeamSearch.ExploreRange";
+    private static final String KEY_AGE_WEIGHT = "MyTeamSearch.AgeWeight";
+    private static final String KEY_TARGET_TIMEOUT = "MyTeamSearch.TargetTimeout";
+
+    // キューに入れる候補
+    // key はキューを作った位置からの距離 + ageWeight × 最後に見えた時刻
+    // （「距離 - ageWeight × 見えてからの時間」から全候補に共通の項を除いたもの）
+    private static final class Candidate implements Comparable<Candidate>
+    {
+	final double key;
+	final int ordinal;
+	final int version;
+
+	Candidate(double key, int ordinal, int version)
+	{
+	    this.key = key;
+	    this.ordinal = ordinal;
+	    this.version = version;
+	}
+
+	@Override
+	public int compareTo(Candidate other)
+	{
+	    int ret = Double.compare(this.key, other.key);
+	    return (ret != 0) ? ret : Integer.compare(this.ordinal, other.ordinal);
+	}
+    }
 
     public MyTeamSearch
 	(AgentInfo ai, WorldInfo wi, ScenarioInfo si,
@@ -30,7 +136,7 @@ public class MyTeamSearch extends Search {
 	// エージェントの種類を取得して文字列に追加
 	switch (ai.me().getStandardURN())
 	{
-	    case FIRE_BRIGADE: 
+	    case FIRE_BRIGADE:
 		clusteringKey += ".Fire";
 		break;
 	    case AMBULANCE_TEAM:
@@ -47,6 +153,63 @@ public class MyTeamSearch extends Search {
 			 "adf.impl.module.algorithm.KMeansClustering");
 	// モジュールの組み込み
 	this.registerModule(this.clustering);
+
+	this.mode = Mode.valueOf(mm.getModuleConfig()
+	    .getValue(KEY_MODE, Mode.RANDOM.name()));
+	if (this.mode == Mode.VANTAGE)
+	{
+	    this.vantage =
+		mm.getModule("SampleSearch.VantagePointCover",
+			     "MyTeam.module.algorithm.VantagePointCover");
+	    this.registerModule(this.vantage);
+	}
+	// 既定では視界の半分の距離まで近づいて見えた建物を探索済みとする
+	this.exploreRange = mm.getModuleConfig()
+	    .getIntValue(KEY_EXPLORE_RANGE, si.getPerceptionLosMaxDistance() / 2);
+	this.ageWeight = mm.getModuleConfig().getIntValue(KEY_AGE_WEIGHT, 1000);
+	this.targetTimeout =
+	    mm.getModuleConfig().getIntValue(KEY_TARGET_TIMEOUT, 30);
+    }
+
+    // 見えた建物を記録する
+    @Override
+    public Search updateInfo(MessageManager mm)
+    {
+	super.updateInfo(mm);
+	// 重複した処理の実行を回避
+	if (this.getCountUpdateInfo() > 1) return this;
+	if (this.mode != Mode.COVERAGE) return this;
+
+	this.initCoverage();
+	int time = this.agentInfo.getTime();
+	double x = this.agentInfo.getX();
+	double y = this.agentInfo.getY();
+
+	// 中に入った建物は探索済み
+	EntityID position = this.agentInfo.getPosition();
+	if (position != null)
+	{
+	    int o = this.ordinals.get(position.getValue(), -1);
+	    if (o >= 0)
+	    {
+		this.lastSeen[o] = time;
+		this.explored.set(o);
+	    }
+	}
+
+	// 見えた建物のうち，近いものは探索済み
+	// 遠いものは見えた時刻を更新し，キューの中の候補を入れ直す
+	for (EntityID id : this.worldInfo.getChanged().getChangedEntities())
+	{
+	    int o = this.ordinals.get(id.getValue(), -1);
+	    if (o < 0) continue;
+	    this.lastSeen[o] = time;
+	    double d = Math.hypot(
+		this.buildingXs[o] - x, this.buildingYs[o] - y);
+	    if (d <= this.exploreRange) this.explored.set(o);
+	    else if (this.queued.get(o)) this.push(o);
+	}
+	return this;
     }
 
     @Override
@@ -54,20 +217,39 @@ public class MyTeamSearch extends Search {
     {
 	// 自分のエージェントIDを取得
 	EntityID me = this.agentInfo.getID();
+	// 今いる場所を立ち寄り済みとして記録
+	EntityID position = this.agentInfo.getPosition();
+	if (position != null) this.visited.add(position.getValue());
 	// 自分の担当クラスタ番号を取得
 	int idx = this.clustering.getClusterIndex(me);
 	// そのクラスタに属する全エンティティID集合を取得
 	Collection<EntityID> cluster =
 	    this.clustering.getClusterEntityIDs(idx);
-        
-	// 擬似乱数を用いてランダムに選択するために，Listに変換
-	List<EntityID> list = new ArrayList<>(cluster);
-    
-	// 擬似乱数を用いてランダムに選択
-	int n = list.size();
-	int r = this.random.nextInt(n);
-	this.result = list.get(r);
 
+	// 担当クラスタがない（要素がない）場合は探索対象なし
+	if (cluster.isEmpty())
+	{
+	    this.result = null;
+	    return this;
+	}
+
+	// クラスタが変わっておらず，今の探索対象がまだ有効なら選び直さない
+	boolean changed = this.refreshCandidates(idx, cluster);
+	if (!changed && this.keepsTarget(position)) return this;
+
+	switch (this.mode)
+	{
+	    case COVERAGE:
+		this.result = this.selectCoverageTarget();
+		break;
+	    case TOUR:
+	    case VANTAGE:
+		this.result = this.selectTourTarget();
+		break;
+	    default:
+		this.result = this.selectRandomTarget();
+	}
+	this.targetSince = this.agentInfo.getTime();
 	return this;
     }
 
@@ -77,4 +259,232 @@ public class MyTeamSearch extends Search {
     {
 	return this.result;
     }
+
+    // --- 内部処理 ---
+
+    // クラスタリングの結果が変わっていれば担当クラスタの候補を作り直し，
+    // true を返す
+    // （クラスタ番号か要素数が変われば作り直す）
+    // getClusterEntityIDs は呼ぶたびに新しいコレクションを返す実装
+    // （RoadKMedoidsClustering など）もあるため，コレクションの同一性では判定しない
+    private boolean refreshCandidates(int idx, Collection<EntityID> cluster)
+    {
+	if (idx == this.candidateCluster
+	    && cluster.size() == this.candidates.size())
+	    return false;
+
+	this.candidateCluster = idx;
+	// 添字で取り出せるリストならコピーせずにそのまま使う
+	this.candidates =
+	    (cluster instanceof List && cluster instanceof RandomAccess)
+	    ? (List<EntityID>)cluster : new ArrayList<>(cluster);
+	if (this.mode == Mode.COVERAGE)
+	{
+	    this.initCoverage();
+	    this.rebuildQueue(this.agentInfo.getX(), this.agentInfo.getY());
+	}
+	if (this.mode == Mode.TOUR)
+	{
+	    this.tour = (this.clustering instanceof TourProvider)
+		? ((TourProvider)this.clustering).getTour(idx)
+		: Collections.emptyList();
+	    this.tourIndex = 0;
+	}
+	if (this.mode == Mode.VANTAGE)
+	{
+	    this.tour = this.vantage.getVantagePoints(idx);
+	    this.tourIndex = 0;
+	}
+	return true;
+    }
+
+    // 今の探索対象を持ち続けるか
+    // 到着した，探索済みになった，燃えている/倒壊した，
+    // 選んでから targetTimeout ステップ経った場合は選び直す
+    private boolean keepsTarget(EntityID position)
+    {
+	if (this.result == null) return false;
+	if (this.result.equals(position)) return false;
+	if (this.targetTimeout > 0
+	    && this.agentInfo.getTime() - this.targetSince >= this.targetTimeout)
+	    return false;
+	if (this.mode == Mode.COVERAGE)
+	{
+	    int o = this.ordinals.get(this.result.getValue(), -1);
+	    if (o >= 0 && this.explored.get(o)) return false;
+	}
+	else if (this.visited.contains(this.result.getValue()))
+	    return false;
+	return this.isSearchable(this.result);
+    }
+
+    // 探索する意味のある場所か（燃えている建物と倒壊した建物を除く）
+    private boolean isSearchable(EntityID id)
+    {
+	StandardEntity entity = this.worldInfo.getEntity(id);
+	if (!(entity instanceof Building)) return true;
+	Building building = (Building)entity;
+	if (building.isOnFire()) return false;
+	if (building.isFierynessDefined()
+	    && building.getFieryness() >= FIERYNESS_BURNT_OUT)
+	    return false;
+	return !building.isBrokennessDefined()
+	    || building.getBrokenness() < BROKENNESS_COLLAPSED;
+    }
+
+    // 擬似乱数を用いて担当クラスタからランダムに選択
+    private EntityID selectRandomTarget()
+    {
+	int n = this.candidates.size();
+	int r = this.random.nextInt(n);
+	// 探索できない建物は避け，その先で最初の候補を選ぶ
+	// （該当がなければ乱数で選んだ要素のまま）
+	for (int k=0; k<n; ++k)
+	{
+	    EntityID candidate = this.candidates.get((r + k) % n);
+	    if (this.isSearchable(candidate)) return candidate;
+	}
+	return this.candidates.get(r);
+    }
+
+    // 巡回順の次の建物（見晴らし点）を選ぶ（探索対象を選び直す時だけ呼ばれ，
+    // 位置は進む一方なので1ステップあたり償却 O(1)）
+    private EntityID selectTourTarget()
+    {
+	int size = this.tour.size();
+	if (size == 0) return this.selectRandomTarget();
+
+	for (int round=0; round<2; ++round)
+	{
+	    // 立ち寄り済みの建物や探索できない建物は飛ばす
+	    for (int k=0; k<size; ++k)
+	    {
+		EntityID id = this.tour.get(this.tourIndex);
+		this.tourIndex = (this.tourIndex + 1) % size;
+		if (!this.visited.contains(id.getValue())
+		    && this.isSearchable(id))
+		    return id;
+	    }
+	    // 一周しても残っていなければ，立ち寄り済みを解除して次の周回へ
+	    for (EntityID id : this.tour) this.visited.remove(id.getValue());
+	}
+	// 探索できる建物が1つもない
+	return null;
+    }
+
+    // --- COVERAGE 用の内部処理 ---
+
+    // 建物の通し番号と座標を用意する（最初の1回だけ）
+    private void initCoverage()
+    {
+	if (this.ordinals != null) return;
+
+	List<StandardEntity> buildings = new ArrayList<>(
+	    this.worldInfo.getEntitiesOfType(
+		BUILDING, GAS_STATION,
+		REFUGE,
+		POLICE_OFFICE, FIRE_STATION, AMBULANCE_CENTRE));
+	buildings.sort(comparing(e -> e.getID().getValue()));
+
+	int size = buildings.size();
+	this.buildingIDs = new EntityID[size];
+	this.buildingXs = new int[size];
+	this.buildingYs = new int[size];
+	this.ordinals = new IntIntMap(size);
+	for (int o=0; o<size; ++o)
+	{
+	    Area area = (Area)buildings.get(o);
+	    this.buildingIDs[o] = area.getID();
+	    this.buildingXs[o] = area.getX();
+	    this.buildingYs[o] = area.getY();
+	    this.ordinals.put(area.getID().getValue(), o);
+	}
+	this.lastSeen = new int[size];
+	Arrays.fill(this.lastSeen, -1);
+	this.versions = new int[size];
+    }
+
+    // 担当クラスタの未探索の建物から，自分の位置で key が最小のものを選ぶ
+    private EntityID selectCoverageTarget()
+    {
+	double x = this.agentInfo.getX();
+	double y = this.agentInfo.getY();
+	if (Math.hypot(x - this.queueX, y - this.queueY) > REBUILD_DISTANCE)
+	    this.rebuildQueue(x, y);
+
+	Candidate best = this.pollBest(x, y);
+	if (best == null && !this.queued.isEmpty())
+	{
+	    // クラスタの建物を全て探索し終えたら，探索済みを解除して次の周回へ
+	    for (int o=this.queued.nextSetBit(0); o>=0; o=this.queued.nextSetBit(o+1))
+		this.explored.clear(o);
+	    this.rebuildQueue(x, y);
+	    best = this.pollBest(x, y);
+	}
+	return (best == null) ? null : this.buildingIDs[best.ordinal];
+    }
+
+    // キューから現在位置で key が最小の候補を探す（キューからは取り除かない）
+    // キューを作った位置から drift だけ離れていると，各候補の実際の key は
+    // キューの key から ±drift の範囲にあるため，
+    // キューの key - drift が見つけた最小値を超えるまで調べればよい
+    private Candidate pollBest(double x, double y)
+    {
+	double drift = Math.hypot(x - this.queueX, y - this.queueY);
+	Candidate best = null;
+	double bestKey = Double.POSITIVE_INFINITY;
+
+	this.scanned.clear();
+	while (!this.queue.isEmpty())
+	{
+	    Candidate c = this.queue.peek();
+	    if (c.key - drift > bestKey) break;
+	    this.queue.poll();
+	    // 探索済み・古い版の候補は捨てる
+	    if (this.explored.get(c.ordinal)) continue;
+	    if (c.version != this.versions[c.ordinal]) continue;
+
+	    this.scanned.add(c);
+	    // 燃えている/倒壊した建物はキューに残したまま選ばない
+	    if (!this.isSearchable(this.buildingIDs[c.ordinal])) continue;
+	    double key = this.key(c.ordinal, x, y);
+	    if (key < bestKey || (key == bestKey && c.ordinal < best.ordinal))
+	    {
+		best = c;
+		bestKey = key;
+	    }
+	}
+	this.queue.addAll(this.scanned);
+	return best;
+    }
+
+    // 担当クラスタの未探索の建物でキューを作り直す
+    private void rebuildQueue(double x, double y)
+    {
+	this.queue.clear();
+	this.queued.clear();
+	this.queueX = x;
+	this.queueY = y;
+	for (EntityID id : this.candidates)
+	{
+	    int o = this.ordinals.get(id.getValue(), -1);
+	    if (o < 0) continue;
+	    this.queued.set(o);
+	    if (!this.explored.get(o)) this.push(o);
+	}
+    }
+
+    // 建物 o の候補をキューを作った位置からの key で入れる（前の版は無効になる）
+    private void push(int o)
+    {
+	++this.versions[o];
+	this.queue.add(new Candidate(
+	    this.key(o, this.queueX, this.queueY), o, this.versions[o]));
+    }
+
+    private double key(int o, double x, double y)
+    {
+	return Math.hypot(this.buildingXs[o] - x, this.buildingYs[o] - y)
+	    + (double)this.ageWeight * this.lastSeen[o];
+    }
 }
@@ -0,0 +1,286 @@
+package MyTeam.module.algorithm;
+
+import adf.core.agent.info.WorldInfo;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.standard.entities.*;
+import static rescuecore2.standard.entities.StandardEntityURN.*;
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+// Area.getNeighbours() から作る道路網のグラフ（CSR形式）
+// 頂点は EntityID の昇順に並べた Area，辺の重みは中心座標間の距離（切り捨て）
+// 最短路の計算は作業領域を使い回すため，1つのインスタンスを
+// 複数のスレッドから同時に使ってはいけない
+public class RoadGraph
+{
+    // 到達できない頂点の距離
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    // グラフに含める Area の種類
+    private static final StandardEntityURN[] AREA_URNS = {
+        ROAD, HYDRANT,
+        BUILDING, GAS_STATION,
+        REFUGE,
+        POLICE_OFFICE, FIRE_STATION, AMBULANCE_CENTRE
+    };
+
+    private final EntityID[] ids;
+    private final int[] xs;
+    private final int[] ys;
+    private final Map<EntityID, Integer> index;
+
+    // i 番目の頂点の辺は targets/weights の [offsets[i], offsets[i+1])
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+
+    // 遅延削除つき二分ヒープ（上位32bit = 距離，下位32bit = 頂点番号）
+    private long[] heap = new long[16];
+    private int heapSize = 0;
+
+    // A* の作業領域（searchStamp[v] が stamp と等しい頂点だけ g[v] が有効）
+    // 探索のたびに全頂点を初期化しないようにする
+    private int[] g;
+    private int[] searchStamp;
+    private int stamp = 0;
+
+    // worldInfo の全ての Area からグラフを作る
+    public static RoadGraph build(WorldInfo worldInfo)
+    {
+        return new RoadGraph(worldInfo.getEntitiesOfType(AREA_URNS));
+    }
+
+    // entities のうち Area だけを頂点にする
+    public RoadGraph(Collection<? extends StandardEntity> entities)
+    {
+        List<Area> areas = new ArrayList<>(entities.size());
+        for (StandardEntity e : entities)
+            if (e instanceof Area) areas.add((Area)e);
+        areas.sort(Comparator.comparingInt(a -> a.getID().getValue()));
+
+        int size = areas.size();
+        this.ids = new EntityID[size];
+        this.xs = new int[size];
+        this.ys = new int[size];
+        this.index = new HashMap<>(size * 2);
+        for (int i=0; i<size; ++i)
+        {
+            Area area = areas.get(i);
+            this.ids[i] = area.getID();
+            this.xs[i] = area.getX();
+            this.ys[i] = area.getY();
+            this.index.put(area.getID(), i);
+        }
+
+        // グラフに含まれない隣接エリアへの辺は捨てる
+        this.offsets = new int[size + 1];
+        for (int i=0; i<size; ++i)
+        {
+            int degree = 0;
+            List<EntityID> neighbours = areas.get(i).getNeighbours();
+            if (neighbours != null)
+                for (EntityID id : neighbours)
+                    if (this.index.containsKey(id)) ++degree;
+            this.offsets[i+1] = this.offsets[i] + degree;
+        }
+        this.targets = new int[this.offsets[size]];
+        this.weights = new int[this.offsets[size]];
+        for (int i=0; i<size; ++i)
+        {
+            List<EntityID> neighbours = areas.get(i).getNeighbours();
+            if (neighbours == null) continue;
+            int e = this.offsets[i];
+            for (EntityID id : neighbours)
+            {
+                Integer j = this.index.get(id);
+                if (j == null) continue;
+                this.targets[e] = j;
+                this.weights[e] = (int)Math.hypot(
+                    this.xs[j] - this.xs[i], this.ys[j] - this.ys[i]);
+                ++e;
+            }
+        }
+    }
+
+    public int size()
+    {
+        return this.ids.length;
+    }
+
+    public EntityID getID(int i)
+    {
+        return this.ids[i];
+    }
+
+    public int getX(int i)
+    {
+        return this.xs[i];
+    }
+
+    public int getY(int i)
+    {
+        return this.ys[i];
+    }
+
+    // id の頂点番号（グラフに含まれなければ -1）
+    public int indexOf(EntityID id)
+    {
+        Integer i = this.index.get(id);
+        return (i == null) ? -1 : i;
+    }
+
+    // source から全ての頂点への最短距離
+    public int[] distancesFrom(int source)
+    {
+        int[] dist = new int[this.size()];
+        this.distancesFrom(source, null, 0, dist);
+        return dist;
+    }
+
+    // source から，labels[v] == label の頂点だけを通る最短距離を dist に求める
+    // （labels が null なら全ての頂点を通る）
+    public void distancesFrom(int source, int[] labels, int label, int[] dist)
+    {
+        Arrays.fill(dist, UNREACHABLE);
+        this.heapSize = 0;
+        dist[source] = 0;
+        this.push(0, source);
+        while (this.heapSize > 0)
+        {
+            long top = this.pop();
+            int v = (int)top;
+            int d = (int)(top >>> 32);
+            if (d != dist[v]) continue;
+            for (int e=this.offsets[v]; e<this.offsets[v+1]; ++e)
+            {
+                int w = this.targets[e];
+                if (labels != null && labels[w] != label) continue;
+                long nd = (long)d + this.weights[e];
+                if (nd >= dist[w]) continue;
+                dist[w] = (int)nd;
+                this.push(dist[w], w);
+            }
+        }
+    }
+
+    // 複数の始点からの最短距離（多始点 Dijkstra）
+    // dist[v]  = 最も近い始点までの距離（到達できなければ UNREACHABLE）
+    // owner[v] = その始点の sources 内での番号（到達できなければ -1）
+    public void multiSource(int[] sources, int[] dist, int[] owner)
+    {
+        Arrays.fill(dist, UNREACHABLE);
+        Arrays.fill(owner, -1);
+        for (int k=0; k<sources.length; ++k) this.relax(sources[k], k, dist, owner);
+    }
+
+    // 始点 source（番号 label）を追加し，dist/owner を短くなる頂点だけ更新する
+    // 既存の始点より近い範囲しか探索しないため，始点を1つずつ増やす場合に速い
+    public void relax(int source, int label, int[] dist, int[] owner)
+    {
+        if (dist[source] == 0) return;
+        this.heapSize = 0;
+        dist[source] = 0;
+        owner[source] = label;
+        this.push(0, source);
+        while (this.heapSize > 0)
+        {
+            long top = this.pop();
+            int v = (int)top;
+            int d = (int)(top >>> 32);
+            if (d != dist[v] || owner[v] != label) continue;
+            for (int e=this.offsets[v]; e<this.offsets[v+1]; ++e)
+            {
+                int w = this.targets[e];
+                long nd = (long)d + this.weights[e];
+                if (nd >= dist[w]) continue;
+                dist[w] = (int)nd;
+                owner[w] = label;
+                this.push(dist[w], w);
+            }
+        }
+    }
+
+    // source から target への最短距離を A* で求める（到達できなければ UNREACHABLE）
+    // lowerBound.applyAsInt(v) は v から target への距離を超えない値を返すこと
+    // （三角不等式を満たす下界なら，各頂点は1回しか確定しない）
+    public int distance(int source, int target, IntUnaryOperator lowerBound)
+    {
+        if (source == target) return 0;
+        if (this.g == null)
+        {
+            this.g = new int[this.size()];
+            this.searchStamp = new int[this.size()];
+        }
+        if (++this.stamp == 0)
+        {
+            Arrays.fill(this.searchStamp, 0);
+            this.stamp = 1;
+        }
+
+        this.heapSize = 0;
+        this.g[source] = 0;
+        this.searchStamp[source] = this.stamp;
+        this.push(lowerBound.applyAsInt(source), source);
+        while (this.heapSize > 0)
+        {
+            long top = this.pop();
+            int v = (int)top;
+            if (v == target) return this.g[v];
+            int d = this.g[v];
+            // 古いキー（g が短くなった後のもの）は捨てる
+            if ((int)(top >>> 32) != this.priority(d, v, lowerBound)) continue;
+            for (int e=this.offsets[v]; e<this.offsets[v+1]; ++e)
+            {
+                int w = this.targets[e];
+                long nd = (long)d + this.weights[e];
+                if (this.searchStamp[w] == this.stamp && nd >= this.g[w])
+                    continue;
+                this.g[w] = (int)nd;
+                this.searchStamp[w] = this.stamp;
+                this.push(this.priority(this.g[w], w, lowerBound), w);
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    // A* のキー g + h（int に収まるよう切り詰める）
+    private int priority(int g, int v, IntUnaryOperator lowerBound)
+    {
+        return (int)Math.min(
+            UNREACHABLE - 1, (long)g + lowerBound.applyAsInt(v));
+    }
+
+    private void push(int dist, int v)
+    {
+        if (this.heapSize == this.heap.length)
+            this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+        long key = ((long)dist << 32) | v;
+        int i = this.heapSize++;
+        while (i > 0)
+        {
+            int parent = (i - 1) >> 1;
+            if (this.heap[parent] <= key) break;
+            this.heap[i] = this.heap[parent];
+            i = parent;
+        }
+        this.heap[i] = key;
+    }
+
+    private long pop()
+    {
+        long top = this.heap[0];
+        long key = this.heap[--this.heapSize];
+        int i = 0;
+        for (;;)
+        {
+            int c = 2*i + 1;
+            if (c >= this.heapSize) break;
+            if (c+1 < this.heapSize && this.heap[c+1] < this.heap[c]) ++c;
+            if (this.heap[c] >= key) break;
+            this.heap[i] = this.heap[c];
+            i = c;
+        }
+        this.heap[i] = key;
+        return top;
+    }
+}
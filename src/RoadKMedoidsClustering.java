@@ -0,0 +1,505 @@
+package MyTeam.module.algorithm;
+
+import adf.core.agent.info.*;
+import adf.core.component.module.algorithm.Clustering;
+import adf.core.component.module.algorithm.StaticClustering;
+import adf.core.agent.module.ModuleManager;
+import adf.core.agent.develop.DevelopData;
+import adf.core.agent.precompute.PrecomputeData;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.standard.entities.*;
+import java.util.*;
+
+// 道路網上の移動距離で Area を k 個にまとめる k-medoids クラスタリング
+// 直線距離の k-means と違い，川や通行できない地区をまたぐクラスタを作りにくい
+//
+// 1. k-means++ と同様に，最寄りの代表点（medoid）までの距離^2 に比例した
+//    確率で初期の代表点を選ぶ（代表点を1つ増やすごとに差分だけ Dijkstra）
+// 2. 多始点 Dijkstra で各 Area を最寄りの代表点に割り当て，
+//    各クラスタで他の要素への距離の和が最小の要素を新しい代表点にする
+//    （候補はクラスタの重心に近い数個の要素と現在の代表点）
+// 3. 代表点が変わらなくなるか，上限回数に達したら終了
+//
+// 代表点から全ての Area への距離表（k×N）は事前計算で PrecomputeData に保存し，
+// エージェントとクラスタの割当コストに使う
+public class RoadKMedoidsClustering extends StaticClustering
+{
+    // --- フィールド ---
+
+    // エージェントID の値 → クラスタ番号 の対応表
+    private final IntIntMap assignment = new IntIntMap();
+
+    // クラスタ数（未設定時は 0 として扱う）
+    private int n = 0;
+
+    // 道路網のグラフ
+    private RoadGraph graph;
+    // 各クラスタの代表点（グラフの頂点番号）
+    private int[] medoids;
+    // 各クラスタの要素
+    private List<List<EntityID>> members = new ArrayList<>();
+    // 代表点から各頂点への移動距離（distances[i][v]）
+    private int[][] distances;
+
+    // このモジュールを動かしている自エージェントの種別（FIRE_BRIGADE 等）
+    private final StandardEntityURN urn;
+
+    // 代表点の更新の繰り返し回数の上限
+    private final int maxIterations;
+    // 代表点の更新で調べる候補の数
+    private final int medoidCandidates;
+
+    // --- 定数 ---
+
+    private static final int COMMON_SEED = 123456789;
+
+    // 道路網で到達できない組の距離は，直線距離をこの倍率で割り増して使う
+    private static final int UNREACHABLE_FACTOR = 4;
+
+    // 事前計算の保存キー（urn で名前空間化する）
+    private static final String MODULE_NAME =
+	"MyTeam.module.algorithm.RoadKMedoidsClustering";
+    private static final String PD_CLUSTER_N = MODULE_NAME + ".n";
+    private static final String PD_CLUSTER_M = MODULE_NAME + ".m";
+    private static final String PD_CLUSTER_A = MODULE_NAME + ".a";
+    private static final String PD_MEDOIDS   = MODULE_NAME + ".medoids";
+    private static final String PD_DISTANCES = MODULE_NAME + ".d";
+
+    // module.cfg の設定キー
+    private static final String KEY_MAX_ITERATIONS =
+	"RoadKMedoidsClustering.MaxIterations";
+    private static final String KEY_MEDOID_CANDIDATES =
+	"RoadKMedoidsClustering.MedoidCandidates";
+
+    // --- コンストラクタ ---
+
+    public RoadKMedoidsClustering(
+	    AgentInfo ai, WorldInfo wi, ScenarioInfo si,
+	    ModuleManager mm, DevelopData dd)
+    {
+	super(ai, wi, si, mm, dd);
+	this.urn = this.agentInfo.me().getStandardURN();
+	this.maxIterations = mm.getModuleConfig()
+	    .getIntValue(KEY_MAX_ITERATIONS, 10);
+	this.medoidCandidates = mm.getModuleConfig()
+	    .getIntValue(KEY_MEDOID_CANDIDATES, 8);
+    }
+
+    // --- 事前計算ありの場合 ---
+
+    @Override
+    public Clustering precompute(PrecomputeData pd)
+    {
+	super.precompute(pd);
+	if (this.getCountPrecompute() > 1) return this;
+
+	this.assignment.clear();
+	this.initN();
+	this.cluster();
+	this.assignAgentsToClusters();
+
+	// 結果をPrecomputeDataに保存（urnで名前空間化）
+	pd.setInteger(this.addSuffixToKey(PD_CLUSTER_N), this.n);
+	List<EntityID> medoidIDs = new ArrayList<>(this.n);
+	for (int i=0; i<this.n; ++i)
+	{
+	    medoidIDs.add(this.graph.getID(this.medoids[i]));
+	    pd.setEntityIDList(
+		this.addSuffixToKey(PD_CLUSTER_M, i), this.members.get(i));
+
+	    // 距離表は頂点番号（EntityID の昇順）の順に，1行を1つの文字列で保存する
+	    pd.setString(this.addSuffixToKey(PD_DISTANCES, i),
+			 IntArrayCodec.encode(this.distances[i]));
+	}
+	pd.setEntityIDList(this.addSuffixToKey(PD_MEDOIDS), medoidIDs);
+	this.assignment.forEach((agent, cluster) ->
+	    pd.setEntityID(
+		this.addSuffixToKey(PD_CLUSTER_A, cluster), new EntityID(agent)));
+	return this;
+    }
+
+    @Override
+    public Clustering resume(PrecomputeData pd)
+    {
+	super.resume(pd);
+	if (this.getCountResume() > 1) return this;
+
+	this.assignment.clear();
+	this.n = pd.getInteger(this.addSuffixToKey(PD_CLUSTER_N));
+
+	// グラフは頂点番号を得るためだけに作り直す（最短路は計算しない）
+	this.graph = RoadGraph.build(this.worldInfo);
+	List<EntityID> medoidIDs =
+	    pd.getEntityIDList(this.addSuffixToKey(PD_MEDOIDS));
+	this.medoids = new int[this.n];
+	this.distances = new int[this.n][];
+	this.members = new ArrayList<>(this.n);
+	for (int i=0; i<this.n; ++i)
+	{
+	    this.medoids[i] = this.graph.indexOf(medoidIDs.get(i));
+
+	    List<EntityID> cluster =
+		pd.getEntityIDList(this.addSuffixToKey(PD_CLUSTER_M, i));
+	    this.members.add(
+		(cluster == null) ? new ArrayList<>() : cluster);
+
+	    this.distances[i] = IntArrayCodec.decode(
+		pd.getString(this.addSuffixToKey(PD_DISTANCES, i)));
+
+	    EntityID agent =
+		pd.getEntityID(this.addSuffixToKey(PD_CLUSTER_A, i));
+	    if (agent != null) this.assignment.put(agent.getValue(), i);
+	}
+	return this;
+    }
+
+    // --- 事前計算なしの場合 ---
+
+    @Override
+    public Clustering preparate()
+    {
+	super.preparate();
+	if (this.getCountPreparate() > 1) return this;
+
+	this.initN();
+	this.cluster();
+	this.assignAgentsToClusters();
+	return this;
+    }
+
+    @Override
+    public Clustering calc()
+    {
+	return this;
+    }
+
+    // --- アクセサ（Getter）API ---
+
+    @Override
+    public int getClusterNumber()
+    {
+	return this.n;
+    }
+
+    @Override
+    public int getClusterIndex(StandardEntity entity)
+    {
+	return this.getClusterIndex(entity.getID());
+    }
+
+    @Override
+    public int getClusterIndex(EntityID id)
+    {
+	return this.assignment.get(id.getValue(), -1);
+    }
+
+    @Override
+    public Collection<StandardEntity> getClusterEntities(int i)
+    {
+	if (i < 0 || i >= this.n) return Collections.emptyList();
+
+	Collection<EntityID> ids = this.getClusterEntityIDs(i);
+	Collection<StandardEntity> ret = new ArrayList<>(ids.size());
+	for (EntityID id : ids) ret.add(this.worldInfo.getEntity(id));
+	return ret;
+    }
+
+    @Override
+    public Collection<EntityID> getClusterEntityIDs(int i)
+    {
+	if (i < 0 || i >= this.members.size()) return Collections.emptyList();
+	return Collections.unmodifiableList(this.members.get(i));
+    }
+
+    // i 番目のクラスタの代表点（未計算なら null）
+    public EntityID getMedoid(int i)
+    {
+	if (this.medoids == null || i < 0 || i >= this.n) return null;
+	return this.graph.getID(this.medoids[i]);
+    }
+
+    // i 番目のクラスタの代表点から id の Area までの道路網上の距離
+    // （到達できない，または不明な場合は -1）
+    public int getTravelDistance(int i, EntityID id)
+    {
+	if (this.distances == null || i < 0 || i >= this.n) return -1;
+	int v = this.graph.indexOf(id);
+	if (v < 0 || v >= this.distances[i].length) return -1;
+	int d = this.distances[i][v];
+	return (d == RoadGraph.UNREACHABLE) ? -1 : d;
+    }
+
+    // --- 内部処理 ---
+
+    // クラスタ数の決定処理（KMeansHungarianAllocator と同じ）
+    private void initN()
+    {
+	switch (this.urn)
+	    {
+	    case FIRE_BRIGADE:
+		this.n = this.scenarioInfo.getScenarioAgentsFb();
+		break;
+	    case POLICE_FORCE:
+		this.n = this.scenarioInfo.getScenarioAgentsPf();
+		break;
+	    case AMBULANCE_TEAM:
+		this.n = this.scenarioInfo.getScenarioAgentsAt();
+		break;
+	    default:
+		this.n = 0;
+	    }
+    }
+
+    // k-medoids の本体（結果は medoids/members/distances に入る）
+    private void cluster()
+    {
+	this.graph = RoadGraph.build(this.worldInfo);
+	int size = this.graph.size();
+	this.n = Math.min(this.n, size);
+	this.members = new ArrayList<>(this.n);
+	this.medoids = new int[this.n];
+	this.distances = new int[this.n][];
+	if (this.n == 0) return;
+
+	int[] dist = new int[size];
+	int[] owner = new int[size];
+	this.seedMedoids(dist, owner);
+
+	int[] work = new int[size];
+	for (int iter=0; iter<this.maxIterations; ++iter)
+	{
+	    this.assignVertices(dist, owner);
+	    boolean changed = false;
+	    for (int i=0; i<this.n; ++i)
+	    {
+		int next = this.bestMedoid(i, owner, work);
+		if (next != this.medoids[i]) changed = true;
+		this.medoids[i] = next;
+	    }
+	    if (!changed) break;
+	}
+	this.assignVertices(dist, owner);
+
+	// クラスタの要素（頂点番号順 = EntityID の昇順）
+	for (int i=0; i<this.n; ++i) this.members.add(new ArrayList<>());
+	for (int v=0; v<size; ++v)
+	    this.members.get(owner[v]).add(this.graph.getID(v));
+
+	// 代表点からの距離表
+	for (int i=0; i<this.n; ++i)
+	    this.distances[i] = this.graph.distancesFrom(this.medoids[i]);
+    }
+
+    // k-means++ と同様に初期の代表点を選ぶ
+    // 道路網で到達できない頂点は，直線距離を割り増した値を距離とみなす
+    private void seedMedoids(int[] dist, int[] owner)
+    {
+	int size = this.graph.size();
+	Random random = new Random(COMMON_SEED);
+	Arrays.fill(dist, RoadGraph.UNREACHABLE);
+	Arrays.fill(owner, -1);
+	// 最寄りの代表点までの直線距離^2
+	double[] euclid2 = new double[size];
+	Arrays.fill(euclid2, Double.POSITIVE_INFINITY);
+
+	double[] weights = new double[size];
+	int next = random.nextInt(size);
+	for (int i=0; i<this.n; ++i)
+	{
+	    this.medoids[i] = next;
+	    this.graph.relax(next, i, dist, owner);
+	    double mx = this.graph.getX(next);
+	    double my = this.graph.getY(next);
+	    for (int v=0; v<size; ++v)
+	    {
+		double dx = this.graph.getX(v) - mx;
+		double dy = this.graph.getY(v) - my;
+		euclid2[v] = Math.min(euclid2[v], dx*dx + dy*dy);
+	    }
+	    if (i+1 == this.n) break;
+
+	    double sum = 0.0;
+	    for (int v=0; v<size; ++v)
+	    {
+		double d = (dist[v] != RoadGraph.UNREACHABLE) ?
+		    dist[v] : UNREACHABLE_FACTOR * Math.sqrt(euclid2[v]);
+		weights[v] = d * d;
+		sum += weights[v];
+	    }
+	    if (sum == 0.0)
+	    {
+		next = random.nextInt(size);
+		continue;
+	    }
+	    double r = random.nextDouble() * sum;
+	    double acc = 0.0;
+	    next = size - 1;
+	    for (int v=0; v<size; ++v)
+	    {
+		acc += weights[v];
+		if (acc >= r) { next = v; break; }
+	    }
+	}
+    }
+
+    // 各頂点を最寄りの代表点に割り当てる
+    // 道路網でどの代表点にも到達できない頂点は直線距離で最寄りの代表点にする
+    private void assignVertices(int[] dist, int[] owner)
+    {
+	this.graph.multiSource(this.medoids, dist, owner);
+	for (int v=0; v<this.graph.size(); ++v)
+	{
+	    if (owner[v] >= 0) continue;
+	    double best = Double.POSITIVE_INFINITY;
+	    for (int i=0; i<this.n; ++i)
+	    {
+		double d = Math.hypot(
+		    this.graph.getX(v) - this.graph.getX(this.medoids[i]),
+		    this.graph.getY(v) - this.graph.getY(this.medoids[i]));
+		if (d < best)
+		{
+		    best = d;
+		    owner[v] = i;
+		}
+	    }
+	}
+    }
+
+    // i 番目のクラスタで，他の要素への距離の和が最小になる要素を返す
+    // 候補はクラスタの重心に近い medoidCandidates 個の要素と現在の代表点
+    private int bestMedoid(int i, int[] owner, int[] work)
+    {
+	int size = this.graph.size();
+	double cx = 0.0, cy = 0.0;
+	int count = 0;
+	for (int v=0; v<size; ++v)
+	{
+	    if (owner[v] != i) continue;
+	    cx += this.graph.getX(v);
+	    cy += this.graph.getY(v);
+	    ++count;
+	}
+	if (count <= 1) return this.medoids[i];
+	cx /= count;
+	cy /= count;
+
+	// 重心に近い順に候補を挿入ソートで保持
+	int k = Math.min(this.medoidCandidates, count);
+	int[] candidates = new int[k + 1];
+	double[] near = new double[k];
+	int filled = 0;
+	for (int v=0; v<size; ++v)
+	{
+	    if (owner[v] != i) continue;
+	    double dx = this.graph.getX(v) - cx;
+	    double dy = this.graph.getY(v) - cy;
+	    double d2 = dx*dx + dy*dy;
+	    if (filled == k && d2 >= near[k-1]) continue;
+	    int pos = (filled < k) ? filled++ : k-1;
+	    while (pos > 0 && near[pos-1] > d2)
+	    {
+		near[pos] = near[pos-1];
+		candidates[pos] = candidates[pos-1];
+		--pos;
+	    }
+	    near[pos] = d2;
+	    candidates[pos] = v;
+	}
+	candidates[k] = this.medoids[i];
+
+	// クラスタ内だけを通る距離の和を比べる（到達できない要素は大きな値）
+	int best = this.medoids[i];
+	long bestCost = Long.MAX_VALUE;
+	for (int c : candidates)
+	{
+	    this.graph.distancesFrom(c, owner, i, work);
+	    long cost = 0;
+	    for (int v=0; v<size; ++v)
+	    {
+		if (owner[v] != i) continue;
+		cost += (work[v] == RoadGraph.UNREACHABLE) ?
+		    Integer.MAX_VALUE : work[v];
+	    }
+	    if (cost < bestCost || (cost == bestCost && c == this.medoids[i]))
+	    {
+		bestCost = cost;
+		best = c;
+	    }
+	}
+	return best;
+    }
+
+    // エージェントとクラスタの割当を Hungarian で決定
+    // コストはエージェントのいる Area から代表点までの道路網上の距離
+    private void assignAgentsToClusters()
+    {
+	List<StandardEntity> agents = new ArrayList<>();
+	for (StandardEntity e : this.worldInfo.getEntitiesOfType(this.urn))
+	{
+	    Human h = (Human)e;
+	    if (h.isXDefined() && h.isYDefined()) agents.add(e);
+	}
+	agents.sort(Comparator.comparingInt(e -> e.getID().getValue()));
+
+	int a = agents.size();
+	if (a == 0 || this.n == 0) return;
+
+	int[][] costs = new int[a][this.n];
+	for (int row=0; row<a; ++row)
+	{
+	    Human agent = (Human)agents.get(row);
+	    int v = agent.isPositionDefined() ?
+		this.graph.indexOf(agent.getPosition()) : -1;
+	    for (int col=0; col<this.n; ++col)
+	    {
+		int d = (v >= 0) ?
+		    this.distances[col][v] : RoadGraph.UNREACHABLE;
+		if (d == RoadGraph.UNREACHABLE)
+		{
+		    int m = this.medoids[col];
+		    double e = Math.hypot(
+			this.graph.getX(m) - agent.getX(),
+			this.graph.getY(m) - agent.getY());
+		    d = (int)Math.min(
+			Integer.MAX_VALUE - 1, UNREACHABLE_FACTOR * e);
+		}
+		costs[row][col] = d;
+	    }
+	}
+
+	// Hungarian は「行数 <= 列数」を前提とするため，
+	// エージェントの方が多い場合は転置して解き，結果を反転する
+	int[] result;
+	if (a <= this.n)
+	{
+	    result = Hungarian.execute(costs);
+	}
+	else
+	{
+	    int[][] transposed = new int[this.n][a];
+	    for (int row=0; row<a; ++row)
+		for (int col=0; col<this.n; ++col)
+		    transposed[col][row] = costs[row][col];
+	    int[] inverse = Hungarian.execute(transposed);
+	    result = new int[a];
+	    Arrays.fill(result, -1);
+	    for (int col=0; col<this.n; ++col)
+		if (inverse[col] >= 0) result[inverse[col]] = col;
+	}
+
+	for (int row=0; row<a; ++row)
+	    if (result[row] >= 0)
+		this.assignment.put(
+		    agents.get(row).getID().getValue(), result[row]);
+    }
+
+    private String addSuffixToKey(String path)
+    {
+	return path + "." + this.urn;
+    }
+
+    private String addSuffixToKey(String path, int i)
+    {
+	return this.addSuffixToKey(path) + "." + i;
+    }
+}
@@ -0,0 +1,288 @@
+package MyTeam.module.algorithm;
+
+import java.util.*;
+
+// 出発点から全ての点を1回ずつ訪れる短い経路（戻らない巡回路）を作る
+// 最近傍法で作った経路を 2-opt と Or-opt で改善する
+// 改善は各点の近傍 NEIGHBORS 個との間の入れ替えだけを試すため，
+// 1回の走査は O(点の数 × NEIGHBORS) で済む（入れ替え自体は O(区間の長さ)）
+//
+// 距離は直線距離で，結果は入力が同じなら常に同じになる
+public final class TourBuilder
+{
+    // 改善で試す近傍の数
+    private static final int NEIGHBORS = 10;
+    // 改善の走査回数の上限
+    private static final int MAX_PASSES = 50;
+    // Or-opt で動かす区間の最大の長さ
+    private static final int MAX_SEGMENT = 3;
+    // これより小さい改善は無視する（浮動小数点の誤差で往復しないように）
+    private static final double EPSILON = 1e-6;
+
+    // 経路 tour[0..m]（tour[0] は出発点 m）とその逆引き
+    private final double[] xs;
+    private final double[] ys;
+    private final int m;
+    private final int[] tour;
+    private final int[] pos;
+    private final int[][] neighbors;
+
+    private TourBuilder(double[] xs, double[] ys, int m)
+    {
+        this.xs = xs;
+        this.ys = ys;
+        this.m = m;
+        this.tour = new int[m + 1];
+        this.pos = new int[m + 1];
+        this.neighbors = new int[m + 1][];
+    }
+
+    // (startX, startY) から点 (xs[k], ys[k]) を全て訪れる順番を返す
+    public static int[] build(double[] xs, double[] ys, double startX, double startY)
+    {
+        int m = xs.length;
+        if (m == 0) return new int[0];
+
+        // 出発点を番号 m の点として末尾に加える
+        double[] px = Arrays.copyOf(xs, m + 1);
+        double[] py = Arrays.copyOf(ys, m + 1);
+        px[m] = startX;
+        py[m] = startY;
+
+        TourBuilder builder = new TourBuilder(px, py, m);
+        builder.nearestNeighbour();
+        builder.initNeighbors();
+        for (int pass=0; pass<MAX_PASSES; ++pass)
+        {
+            boolean improved = builder.twoOpt();
+            improved |= builder.orOpt();
+            if (!improved) break;
+        }
+        return Arrays.copyOfRange(builder.tour, 1, m + 1);
+    }
+
+    // 経路の長さ（出発点から最後の点まで）
+    public static double length(
+        double[] xs, double[] ys, double startX, double startY, int[] order)
+    {
+        double ret = 0.0;
+        double x = startX;
+        double y = startY;
+        for (int k : order)
+        {
+            ret += Math.hypot(xs[k] - x, ys[k] - y);
+            x = xs[k];
+            y = ys[k];
+        }
+        return ret;
+    }
+
+    // 最近傍法：今いる点から最も近い未訪問の点へ進む（O(m^2)）
+    private void nearestNeighbour()
+    {
+        boolean[] used = new boolean[this.m];
+        this.tour[0] = this.m;
+        int current = this.m;
+        for (int k=1; k<=this.m; ++k)
+        {
+            int next = -1;
+            double best = Double.POSITIVE_INFINITY;
+            for (int c=0; c<this.m; ++c)
+            {
+                if (used[c]) continue;
+                double d = this.dist(current, c);
+                if (d < best)
+                {
+                    best = d;
+                    next = c;
+                }
+            }
+            used[next] = true;
+            this.tour[k] = next;
+            current = next;
+        }
+        for (int k=0; k<=this.m; ++k) this.pos[this.tour[k]] = k;
+    }
+
+    // 各点（出発点を含む）の近傍の点
+    private void initNeighbors()
+    {
+        KDTree2D tree = new KDTree2D(this.xs, this.ys, this.m + 1);
+        int k = Math.min(NEIGHBORS + 1, this.m + 1);
+        int[] buffer = new int[k];
+        KDTree2D.Search search = new KDTree2D.Search(k);
+        for (int c=0; c<=this.m; ++c)
+        {
+            int found = tree.kNearest(this.xs[c], this.ys[c], k, buffer, search);
+            int[] list = new int[found];
+            int size = 0;
+            for (int e=0; e<found; ++e)
+                if (buffer[e] != c) list[size++] = buffer[e];
+            this.neighbors[c] = Arrays.copyOf(list, size);
+        }
+    }
+
+    // 2-opt：近傍の点どうしを辺で結ぶように区間を反転する
+    private boolean twoOpt()
+    {
+        boolean improved = false;
+        for (int i=0; i<=this.m; ++i)
+        {
+            int a = this.tour[i];
+            for (int c : this.neighbors[a])
+            {
+                int p = Math.min(this.pos[a], this.pos[c]);
+                int q = Math.max(this.pos[a], this.pos[c]);
+                // tour[p] と tour[q] を隣り合わせる2通りの反転
+                if (this.gainReverse(p + 1, q) < -EPSILON)
+                {
+                    this.reverse(p + 1, q);
+                    improved = true;
+                }
+                else if (p >= 1 && this.gainReverse(p, q - 1) < -EPSILON)
+                {
+                    this.reverse(p, q - 1);
+                    improved = true;
+                }
+            }
+        }
+        return improved;
+    }
+
+    // tour[lo..hi] を反転したときの長さの変化（1 <= lo）
+    private double gainReverse(int lo, int hi)
+    {
+        if (lo >= hi) return 0.0;
+        int before = this.tour[lo - 1];
+        double ret = this.dist(before, this.tour[hi])
+            - this.dist(before, this.tour[lo]);
+        if (hi < this.m)
+        {
+            int after = this.tour[hi + 1];
+            ret += this.dist(this.tour[lo], after)
+                - this.dist(this.tour[hi], after);
+        }
+        return ret;
+    }
+
+    private void reverse(int lo, int hi)
+    {
+        while (lo < hi)
+        {
+            int t = this.tour[lo];
+            this.tour[lo] = this.tour[hi];
+            this.tour[hi] = t;
+            this.pos[this.tour[lo]] = lo;
+            this.pos[this.tour[hi]] = hi;
+            ++lo;
+            --hi;
+        }
+    }
+
+    // Or-opt：長さ 1～MAX_SEGMENT の区間を，端の点の近傍の隣へ
+    // （必要なら向きを変えて）移す
+    private boolean orOpt()
+    {
+        boolean improved = false;
+        for (int length=1; length<=MAX_SEGMENT; ++length)
+        {
+            for (int s=1; s+length-1<=this.m; ++s)
+            {
+                if (this.moveSegment(s, s + length - 1)) improved = true;
+            }
+        }
+        return improved;
+    }
+
+    // tour[s..e] をより短くなる位置へ移し，移したら true を返す
+    private boolean moveSegment(int s, int e)
+    {
+        int first = this.tour[s];
+        int last = this.tour[e];
+        int before = this.tour[s - 1];
+        // 区間を取り除いたときの長さの変化
+        double removal = -this.dist(before, first);
+        if (e < this.m)
+        {
+            int after = this.tour[e + 1];
+            removal += this.dist(before, after) - this.dist(last, after);
+        }
+
+        double bestDelta = -EPSILON;
+        int bestGap = -1;
+        boolean bestReversed = false;
+        for (int end=0; end<2; ++end)
+        {
+            int[] list = this.neighbors[(end == 0) ? first : last];
+            for (int c : list)
+            {
+                int k = this.pos[c];
+                if (k >= s - 1 && k <= e) continue;
+                // c の前後どちらかの辺（tour[g], tour[g+1]）に入れる
+                for (int g=k-1; g<=k; ++g)
+                {
+                    if (g < 0 || (g >= s - 1 && g <= e)) continue;
+                    int u = this.tour[g];
+                    int v = (g < this.m) ? this.tour[g + 1] : -1;
+                    double base = (v < 0) ? 0.0 : this.dist(u, v);
+                    double forward = this.dist(u, first)
+                        + ((v < 0) ? 0.0 : this.dist(last, v)) - base;
+                    double backward = this.dist(u, last)
+                        + ((v < 0) ? 0.0 : this.dist(first, v)) - base;
+                    if (removal + forward < bestDelta)
+                    {
+                        bestDelta = removal + forward;
+                        bestGap = g;
+                        bestReversed = false;
+                    }
+                    if (removal + backward < bestDelta)
+                    {
+                        bestDelta = removal + backward;
+                        bestGap = g;
+                        bestReversed = true;
+                    }
+                }
+            }
+        }
+        if (bestGap < 0) return false;
+
+        // 区間を tour[bestGap] の直後へ移す
+        int length = e - s + 1;
+        int[] segment = Arrays.copyOfRange(this.tour, s, e + 1);
+        if (bestReversed)
+        {
+            for (int k=0; k<length/2; ++k)
+            {
+                int t = segment[k];
+                segment[k] = segment[length - 1 - k];
+                segment[length - 1 - k] = t;
+            }
+        }
+        int from;
+        int to;
+        if (bestGap < s)
+        {
+            // tour[bestGap+1..s-1] を後ろへずらす
+            System.arraycopy(this.tour, bestGap + 1,
+                             this.tour, bestGap + 1 + length, s - 1 - bestGap);
+            System.arraycopy(segment, 0, this.tour, bestGap + 1, length);
+            from = bestGap + 1;
+            to = e;
+        }
+        else
+        {
+            // tour[e+1..bestGap] を前へずらす
+            System.arraycopy(this.tour, e + 1, this.tour, s, bestGap - e);
+            System.arraycopy(segment, 0, this.tour, bestGap - length + 1, length);
+            from = s;
+            to = bestGap;
+        }
+        for (int k=from; k<=to; ++k) this.pos[this.tour[k]] = k;
+        return true;
+    }
+
+    private double dist(int a, int b)
+    {
+        return Math.hypot(this.xs[a] - this.xs[b], this.ys[a] - this.ys[b]);
+    }
+}
@@ -0,0 +1,12 @@
+package MyTeam.module.algorithm;
+
+import rescuecore2.worldmodel.EntityID;
+import java.util.List;
+
+// クラスタごとに建物を訪れる順番（巡回順）を持つクラスタリング
+// MyTeamSearch は担当クラスタの巡回順を先頭から順にたどる
+public interface TourProvider
+{
+    // i番目のクラスタの建物を訪れる順番（なければ空のリスト）
+    List<EntityID> getTour(int i);
+}
@@ -0,0 +1,569 @@
+package MyTeam.module.algorithm;
+
+import adf.core.agent.info.*;
+import adf.core.component.module.AbstractModule;
+import adf.core.component.module.algorithm.Clustering;
+import adf.core.agent.module.ModuleManager;
+import adf.core.agent.develop.DevelopData;
+import adf.core.agent.precompute.PrecomputeData;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.standard.entities.*;
+import static rescuecore2.standard.entities.StandardEntityURN.*;
+import java.util.*;
+import static java.util.Comparator.*;
+
+// 建物を1つずつ訪れる代わりに，見通しのよい道路（見晴らし点）から
+// まとめて建物を見るための見晴らし点をクラスタごとに求めるモジュール
+//
+// 1. 視界の最大距離以内にある道路の中心から建物の中心までの線分が，
+//    他の建物の壁（通れない辺）に遮られなければ，その道路から建物が見えるとみなす
+//    （実際の視界は数十本の光線で決まるが，建物は光線の間隔より十分大きいため
+//     中心どうしを結ぶ線分1本で近似する）
+// 2. クラスタの建物を全て見られる見晴らし点の集合を，貪欲法の重み付き集合被覆で選ぶ
+//    （まだ見ていない建物の数 / 重み が最大の道路から順に選ぶ．
+//     クラスタ外の道路は重くする）
+//    どの道路からも見えない建物は，建物そのものを見晴らし点にする
+// 3. 見晴らし点を，クラスタに割り当てられたエージェントの位置から
+//    TourBuilder で短い順路に並べる
+//
+// 事前計算では全クラスタ分を保存し，事前計算なしの場合は
+// 問い合わせのあったクラスタだけ計算する
+public class VantagePointCover extends AbstractModule
+{
+    // --- フィールド ---
+
+    // 見晴らし点を求めるクラスタリング（MyTeamSearch と同じもの）
+    private final Clustering clustering;
+
+    // このモジュールを動かしている自エージェントの種別（FIRE_BRIGADE 等）
+    private final StandardEntityURN urn;
+
+    // 各クラスタの見晴らし点（訪れる順，未計算のクラスタは null）
+    private final List<List<EntityID>> points = new ArrayList<>();
+
+    // 視界の最大距離
+    private final int maxDistance;
+    // クラスタ外の道路の重み（クラスタ内の道路は 1）
+    private final double outsideWeight;
+
+    // 道路と建物の座標，建物の壁（見晴らし点を計算する時に1回だけ作る）
+    private EntityID[] roadIDs;
+    private double[] roadXs;
+    private double[] roadYs;
+    private Grid roadGrid;
+    // 建物の ID の値 → 建物の通し番号（壁の持ち主の判定に使う）
+    private IntIntMap buildingOrdinals;
+    // 壁 w は (wallX0[w], wallY0[w]) - (wallX1[w], wallY1[w])，持ち主は wallOwner[w]
+    private double[] wallX0;
+    private double[] wallY0;
+    private double[] wallX1;
+    private double[] wallY1;
+    private int[] wallOwner;
+    private Grid wallGrid;
+
+    // --- 定数 ---
+
+    // 視界の最大距離が設定されていない場合の値（perception.los.max-distance）
+    private static final int DEFAULT_MAX_DISTANCE = 30000;
+
+    // 事前計算の保存キー（urn で名前空間化する）
+    private static final String MODULE_NAME =
+	"MyTeam.module.algorithm.VantagePointCover";
+    private static final String PD_POINTS_BLOB = MODULE_NAME + ".blob";
+    // 保存形式の版（形式を変えたら増やす）
+    private static final int PD_FORMAT_VERSION = 1;
+
+    // module.cfg の設定キー
+    private static final String KEY_MAX_DISTANCE =
+	"VantagePointCover.MaxDistance";
+    private static final String KEY_OUTSIDE_WEIGHT =
+	"VantagePointCover.OutsideWeight";
+
+    // --- コンストラクタ ---
+
+    public VantagePointCover(
+	    AgentInfo ai, WorldInfo wi, ScenarioInfo si,
+	    ModuleManager mm, DevelopData dd)
+    {
+	super(ai, wi, si, mm, dd);
+	this.urn = this.agentInfo.me().getStandardURN();
+
+	// MyTeamSearch と同じクラスタリングを使う
+	String clusteringKey = "SampleSearch.Clustering";
+	switch (this.urn)
+	{
+	    case FIRE_BRIGADE:
+		clusteringKey += ".Fire";
+		break;
+	    case AMBULANCE_TEAM:
+		clusteringKey += ".Ambulance";
+		break;
+	    case POLICE_FORCE:
+		clusteringKey += ".Police";
+		break;
+	}
+	this.clustering =
+	    mm.getModule(clusteringKey,
+			 "adf.impl.module.algorithm.KMeansClustering");
+	this.registerModule(this.clustering);
+
+	int los = si.getPerceptionLosMaxDistance();
+	this.maxDistance = mm.getModuleConfig().getIntValue(
+	    KEY_MAX_DISTANCE, (los > 0) ? los : DEFAULT_MAX_DISTANCE);
+	this.outsideWeight = mm.getModuleConfig()
+	    .getFloatValue(KEY_OUTSIDE_WEIGHT, 2.0);
+    }
+
+    // --- 事前計算ありの場合 ---
+
+    @Override
+    public AbstractModule precompute(PrecomputeData pd)
+    {
+	super.precompute(pd);
+	if (this.getCountPrecompute() > 1) return this;
+
+	// 全クラスタの見晴らし点を1つの符号化された配列として保存
+	// [形式の版, クラスタ数, (見晴らし点の数, 見晴らし点のID...) をクラスタ数だけ]
+	this.resetPoints();
+	int n = this.points.size();
+	int size = 2;
+	for (int i=0; i<n; ++i) size += 1 + this.getVantagePoints(i).size();
+	int[] blob = new int[size];
+	int pos = 0;
+	blob[pos++] = PD_FORMAT_VERSION;
+	blob[pos++] = n;
+	for (int i=0; i<n; ++i)
+	{
+	    List<EntityID> list = this.getVantagePoints(i);
+	    blob[pos++] = list.size();
+	    for (EntityID id : list) blob[pos++] = id.getValue();
+	}
+	pd.setString(this.addSuffixToKey(PD_POINTS_BLOB),
+		     IntArrayCodec.encode(blob));
+	return this;
+    }
+
+    @Override
+    public AbstractModule resume(PrecomputeData pd)
+    {
+	super.resume(pd);
+	if (this.getCountResume() > 1) return this;
+
+	this.resetPoints();
+	// 保存されていなければ事前計算なしの場合と同じく必要な時に計算する
+	String text = pd.getString(this.addSuffixToKey(PD_POINTS_BLOB));
+	if (text == null) return this;
+
+	int[] blob = IntArrayCodec.decode(text);
+	int pos = 0;
+	if (blob[pos++] != PD_FORMAT_VERSION)
+	    throw new IllegalStateException(
+		"事前計算の形式が異なります: " + blob[0]);
+	int n = blob[pos++];
+	if (n != this.points.size())
+	    throw new IllegalStateException(
+		"事前計算時とクラスタ数が異なります: "
+		+ n + " != " + this.points.size());
+	for (int i=0; i<n; ++i)
+	{
+	    int count = blob[pos++];
+	    List<EntityID> list = new ArrayList<>(count);
+	    for (int k=0; k<count; ++k) list.add(new EntityID(blob[pos++]));
+	    this.points.set(i, Collections.unmodifiableList(list));
+	}
+	return this;
+    }
+
+    // --- 事前計算なしの場合 ---
+
+    @Override
+    public AbstractModule preparate()
+    {
+	super.preparate();
+	if (this.getCountPreparate() > 1) return this;
+
+	this.resetPoints();
+	return this;
+    }
+
+    @Override
+    public AbstractModule calc()
+    {
+	return this;
+    }
+
+    // --- アクセサ（Getter）API ---
+
+    // i番目のクラスタの見晴らし点（訪れる順）
+    public List<EntityID> getVantagePoints(int i)
+    {
+	if (i < 0 || i >= this.points.size()) return Collections.emptyList();
+	if (this.points.get(i) == null) this.points.set(i, this.solve(i));
+	return this.points.get(i);
+    }
+
+    // --- 内部処理 ---
+
+    // 見晴らし点を全て未計算に戻す
+    private void resetPoints()
+    {
+	this.points.clear();
+	int n = this.clustering.getClusterNumber();
+	for (int i=0; i<n; ++i) this.points.add(null);
+    }
+
+    // i番目のクラスタの見晴らし点を求める
+    private List<EntityID> solve(int i)
+    {
+	this.initGeometry();
+
+	// クラスタの建物
+	List<Area> buildings = new ArrayList<>();
+	for (EntityID id : this.clustering.getClusterEntityIDs(i))
+	{
+	    StandardEntity e = this.worldInfo.getEntity(id);
+	    if (e instanceof Building) buildings.add((Area)e);
+	}
+	int m = buildings.size();
+	if (m == 0) return Collections.emptyList();
+
+	// 各建物が見える道路を調べ，道路ごとに見える建物をまとめる（CSR形式）
+	int r = this.roadIDs.length;
+	int[] pairRoad = new int[16];
+	int[] pairBuilding = new int[16];
+	int pairs = 0;
+	for (int b=0; b<m; ++b)
+	{
+	    Area building = buildings.get(b);
+	    double bx = building.getX();
+	    double by = building.getY();
+	    int owner = this.buildingOrdinals.get(building.getID().getValue(), -1);
+	    int[] found = this.roadGrid.query(
+		bx - this.maxDistance, by - this.maxDistance,
+		bx + this.maxDistance, by + this.maxDistance);
+	    int count = this.roadGrid.count;
+	    for (int k=0; k<count; ++k)
+	    {
+		int road = found[k];
+		double rx = this.roadXs[road];
+		double ry = this.roadYs[road];
+		if (Math.hypot(bx - rx, by - ry) > this.maxDistance) continue;
+		if (!this.visible(rx, ry, bx, by, owner)) continue;
+		if (pairs == pairRoad.length)
+		{
+		    pairRoad = Arrays.copyOf(pairRoad, 2*pairs);
+		    pairBuilding = Arrays.copyOf(pairBuilding, 2*pairs);
+		}
+		pairRoad[pairs] = road;
+		pairBuilding[pairs] = b;
+		++pairs;
+	    }
+	}
+	int[] start = new int[r+1];
+	for (int p=0; p<pairs; ++p) ++start[pairRoad[p]+1];
+	for (int v=0; v<r; ++v) start[v+1] += start[v];
+	int[] seen = new int[pairs];
+	int[] fill = Arrays.copyOf(start, r);
+	for (int p=0; p<pairs; ++p) seen[fill[pairRoad[p]]++] = pairBuilding[p];
+
+	// 貪欲法の重み付き集合被覆
+	// 見える建物の数は選ぶごとに減る一方なので，キューの値は上限として使い，
+	// 取り出した時に数え直して，値が変わっていなければそのまま選ぶ
+	boolean[] covered = new boolean[m];
+	double[] weights = new double[r];
+	PriorityQueue<double[]> queue = new PriorityQueue<>(
+	    comparingDouble((double[] e) -> -e[0]).thenComparingDouble(e -> e[1]));
+	for (int v=0; v<r; ++v)
+	{
+	    if (start[v] == start[v+1]) continue;
+	    weights[v] = (this.clustering.getClusterIndex(this.roadIDs[v]) == i)
+		? 1.0 : this.outsideWeight;
+	    queue.add(new double[] {(start[v+1] - start[v]) / weights[v], v});
+	}
+
+	List<EntityID> chosen = new ArrayList<>();
+	List<double[]> chosenXY = new ArrayList<>();
+	while (!queue.isEmpty())
+	{
+	    double[] top = queue.poll();
+	    int v = (int)top[1];
+	    int gain = 0;
+	    for (int k=start[v]; k<start[v+1]; ++k) if (!covered[seen[k]]) ++gain;
+	    if (gain == 0) continue;
+	    double score = gain / weights[v];
+	    if (score < top[0])
+	    {
+		queue.add(new double[] {score, v});
+		continue;
+	    }
+	    for (int k=start[v]; k<start[v+1]; ++k) covered[seen[k]] = true;
+	    chosen.add(this.roadIDs[v]);
+	    chosenXY.add(new double[] {this.roadXs[v], this.roadYs[v]});
+	}
+	// どの道路からも見えない建物は建物そのものを訪れる
+	for (int b=0; b<m; ++b)
+	{
+	    if (covered[b]) continue;
+	    Area building = buildings.get(b);
+	    chosen.add(building.getID());
+	    chosenXY.add(new double[] {building.getX(), building.getY()});
+	}
+
+	// 割り当てられたエージェントの位置（いなければ建物の重心）から並べる
+	int size = chosen.size();
+	double[] xs = new double[size];
+	double[] ys = new double[size];
+	for (int k=0; k<size; ++k)
+	{
+	    xs[k] = chosenXY.get(k)[0];
+	    ys[k] = chosenXY.get(k)[1];
+	}
+	double[] origin = this.startOf(i, buildings);
+	int[] order = TourBuilder.build(xs, ys, origin[0], origin[1]);
+	List<EntityID> ret = new ArrayList<>(size);
+	for (int k : order) ret.add(chosen.get(k));
+	return Collections.unmodifiableList(ret);
+    }
+
+    // i番目のクラスタに割り当てられたエージェントの位置
+    // （いなければ建物の重心）
+    private double[] startOf(int i, List<Area> buildings)
+    {
+	List<StandardEntity> agents = new ArrayList<>(
+	    this.worldInfo.getEntitiesOfType(this.urn));
+	agents.sort(comparing(e -> e.getID().getValue()));
+	for (StandardEntity e : agents)
+	{
+	    Human h = (Human)e;
+	    if (!h.isXDefined() || !h.isYDefined()) continue;
+	    if (this.clustering.getClusterIndex(h.getID()) != i) continue;
+	    return new double[] {h.getX(), h.getY()};
+	}
+
+	double x = 0.0;
+	double y = 0.0;
+	for (Area a : buildings)
+	{
+	    x += a.getX();
+	    y += a.getY();
+	}
+	return new double[] {x / buildings.size(), y / buildings.size()};
+    }
+
+    // (rx, ry) から建物 owner の中心 (bx, by) が他の建物の壁に遮られずに見えるか
+    private boolean visible(double rx, double ry, double bx, double by, int owner)
+    {
+	int[] found = this.wallGrid.query(
+	    Math.min(rx, bx), Math.min(ry, by),
+	    Math.max(rx, bx), Math.max(ry, by));
+	int count = this.wallGrid.count;
+	for (int k=0; k<count; ++k)
+	{
+	    int w = found[k];
+	    if (this.wallOwner[w] == owner) continue;
+	    if (crosses(rx, ry, bx, by,
+			this.wallX0[w], this.wallY0[w],
+			this.wallX1[w], this.wallY1[w]))
+		return false;
+	}
+	return true;
+    }
+
+    // 線分 p0-p1 と q0-q1 が互いに相手を横切るか（端で接するだけなら横切らない）
+    private static boolean crosses(
+	double p0x, double p0y, double p1x, double p1y,
+	double q0x, double q0y, double q1x, double q1y)
+    {
+	double d1 = cross(q1x - q0x, q1y - q0y, p0x - q0x, p0y - q0y);
+	double d2 = cross(q1x - q0x, q1y - q0y, p1x - q0x, p1y - q0y);
+	if (d1 == 0.0 || d2 == 0.0 || (d1 > 0.0) == (d2 > 0.0)) return false;
+	double d3 = cross(p1x - p0x, p1y - p0y, q0x - p0x, q0y - p0y);
+	double d4 = cross(p1x - p0x, p1y - p0y, q1x - p0x, q1y - p0y);
+	return d3 != 0.0 && d4 != 0.0 && (d3 > 0.0) != (d4 > 0.0);
+    }
+
+    private static double cross(double ax, double ay, double bx, double by)
+    {
+	return ax * by - ay * bx;
+    }
+
+    // 道路の座標と建物の壁の格子を作る（最初の1回だけ）
+    private void initGeometry()
+    {
+	if (this.roadGrid != null) return;
+
+	List<StandardEntity> roads = new ArrayList<>(
+	    this.worldInfo.getEntitiesOfType(ROAD, HYDRANT));
+	roads.sort(comparing(e -> e.getID().getValue()));
+	int r = roads.size();
+	this.roadIDs = new EntityID[r];
+	this.roadXs = new double[r];
+	this.roadYs = new double[r];
+	for (int v=0; v<r; ++v)
+	{
+	    Area area = (Area)roads.get(v);
+	    this.roadIDs[v] = area.getID();
+	    this.roadXs[v] = area.getX();
+	    this.roadYs[v] = area.getY();
+	}
+	this.roadGrid = new Grid(
+	    this.roadXs, this.roadYs, this.roadXs, this.roadYs, r,
+	    this.maxDistance);
+
+	List<StandardEntity> buildings = new ArrayList<>(
+	    this.worldInfo.getEntitiesOfType(
+		BUILDING, GAS_STATION,
+		REFUGE,
+		POLICE_OFFICE, FIRE_STATION, AMBULANCE_CENTRE));
+	buildings.sort(comparing(e -> e.getID().getValue()));
+	this.buildingOrdinals = new IntIntMap(buildings.size());
+	int walls = 0;
+	for (int o=0; o<buildings.size(); ++o)
+	{
+	    Area area = (Area)buildings.get(o);
+	    this.buildingOrdinals.put(area.getID().getValue(), o);
+	    if (area.getEdges() == null) continue;
+	    for (Edge edge : area.getEdges()) if (!edge.isPassable()) ++walls;
+	}
+	this.wallX0 = new double[walls];
+	this.wallY0 = new double[walls];
+	this.wallX1 = new double[walls];
+	this.wallY1 = new double[walls];
+	this.wallOwner = new int[walls];
+	int w = 0;
+	for (int o=0; o<buildings.size(); ++o)
+	{
+	    Area area = (Area)buildings.get(o);
+	    if (area.getEdges() == null) continue;
+	    for (Edge edge : area.getEdges())
+	    {
+		if (edge.isPassable()) continue;
+		this.wallX0[w] = edge.getStartX();
+		this.wallY0[w] = edge.getStartY();
+		this.wallX1[w] = edge.getEndX();
+		this.wallY1[w] = edge.getEndY();
+		this.wallOwner[w] = o;
+		++w;
+	    }
+	}
+	// 壁は短いので，視線の長さより細かい格子にする
+	this.wallGrid = new Grid(
+	    this.wallX0, this.wallY0, this.wallX1, this.wallY1, walls,
+	    this.maxDistance / 4.0);
+    }
+
+    private String addSuffixToKey(String path)
+    {
+	return path + "." + this.urn;
+    }
+
+    // 平面を一辺 cell の正方形のマスに区切り，各マスに重なる要素を持つ格子
+    // 要素 k は (x0[k], y0[k]) - (x1[k], y1[k]) を対角とする長方形（点でもよい）
+    private static final class Grid
+    {
+	private final double minX;
+	private final double minY;
+	private final double cell;
+	private final int cols;
+	private final int rows;
+	// マス c に重なる要素は items[start[c]..start[c+1])
+	private final int[] start;
+	private final int[] items;
+	// 1回の問い合わせで同じ要素を2回返さないための印
+	private final int[] stamp;
+	private int query = 0;
+	// 問い合わせの結果（先頭 count 個）
+	private int[] found = new int[16];
+	int count = 0;
+
+	Grid(double[] x0, double[] y0, double[] x1, double[] y1,
+	     int size, double cell)
+	{
+	    double minX = 0.0;
+	    double minY = 0.0;
+	    double maxX = 0.0;
+	    double maxY = 0.0;
+	    for (int k=0; k<size; ++k)
+	    {
+		double lx = Math.min(x0[k], x1[k]);
+		double ly = Math.min(y0[k], y1[k]);
+		double hx = Math.max(x0[k], x1[k]);
+		double hy = Math.max(y0[k], y1[k]);
+		minX = (k == 0) ? lx : Math.min(minX, lx);
+		minY = (k == 0) ? ly : Math.min(minY, ly);
+		maxX = (k == 0) ? hx : Math.max(maxX, hx);
+		maxY = (k == 0) ? hy : Math.max(maxY, hy);
+	    }
+	    this.minX = minX;
+	    this.minY = minY;
+	    this.cell = Math.max(cell, 1.0);
+	    this.cols = (int)((maxX - minX) / this.cell) + 1;
+	    this.rows = (int)((maxY - minY) / this.cell) + 1;
+
+	    // 各マスに重なる要素を数えてから詰める（CSR形式）
+	    int cells = this.cols * this.rows;
+	    this.start = new int[cells + 1];
+	    for (int k=0; k<size; ++k)
+	    {
+		int c0 = this.col(Math.min(x0[k], x1[k]));
+		int c1 = this.col(Math.max(x0[k], x1[k]));
+		int r0 = this.row(Math.min(y0[k], y1[k]));
+		int r1 = this.row(Math.max(y0[k], y1[k]));
+		for (int r=r0; r<=r1; ++r)
+		    for (int c=c0; c<=c1; ++c) ++this.start[r*this.cols + c + 1];
+	    }
+	    for (int c=0; c<cells; ++c) this.start[c+1] += this.start[c];
+	    this.items = new int[this.start[cells]];
+	    int[] fill = Arrays.copyOf(this.start, cells);
+	    for (int k=0; k<size; ++k)
+	    {
+		int c0 = this.col(Math.min(x0[k], x1[k]));
+		int c1 = this.col(Math.max(x0[k], x1[k]));
+		int r0 = this.row(Math.min(y0[k], y1[k]));
+		int r1 = this.row(Math.max(y0[k], y1[k]));
+		for (int r=r0; r<=r1; ++r)
+		    for (int c=c0; c<=c1; ++c) this.items[fill[r*this.cols + c]++] = k;
+	    }
+	    this.stamp = new int[size];
+	}
+
+	// 長方形 [x0, x1]×[y0, y1] と同じマスにある要素を返す
+	// （結果は先頭 count 個で，次の問い合わせまで有効）
+	int[] query(double x0, double y0, double x1, double y1)
+	{
+	    ++this.query;
+	    this.count = 0;
+	    int c0 = this.col(x0);
+	    int c1 = this.col(x1);
+	    int r0 = this.row(y0);
+	    int r1 = this.row(y1);
+	    for (int r=r0; r<=r1; ++r)
+		for (int c=c0; c<=c1; ++c)
+		{
+		    int cell = r*this.cols + c;
+		    for (int e=this.start[cell]; e<this.start[cell+1]; ++e)
+		    {
+			int k = this.items[e];
+			if (this.stamp[k] == this.query) continue;
+			this.stamp[k] = this.query;
+			if (this.count == this.found.length)
+			    this.found = Arrays.copyOf(this.found, 2*this.count);
+			this.found[this.count++] = k;
+		    }
+		}
+	    return this.found;
+	}
+
+	private int col(double x)
+	{
+	    int c = (int)Math.floor((x - this.minX) / this.cell);
+	    return Math.max(0, Math.min(this.cols - 1, c));
+	}
+
+	private int row(double y)
+	{
+	    int r = (int)Math.floor((y - this.minY) / this.cell);
+	    return Math.max(0, Math.min(this.rows - 1, r));
+	}
+    }
+}